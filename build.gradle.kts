@@ -15,6 +15,11 @@ val api by sourceSets.registering {
     compileClasspath += sourceSets.main.get().compileClasspath
 }
 
+val benchmark by sourceSets.registering {
+    compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+    runtimeClasspath += sourceSets.main.get().output + sourceSets.main.get().runtimeClasspath
+}
+
 dependencies {
     // To change the versions see the gradle.properties file
     minecraft("com.mojang:minecraft:${project.extra["minecraft_version"]}")
@@ -40,11 +45,18 @@ tasks.build {
     dependsOn(apiJar)
 }
 
+val transformBenchmark by tasks.registering(JavaExec::class) {
+    group = "verification"
+    description = "Measures how long the class transformers take on the Fabric Loader classes they target."
+    classpath = benchmark.get().runtimeClasspath
+    mainClass.set("io.github.gaming32.modloadingscreen.MlsTransformBenchmark")
+}
+
 tasks.processResources {
     inputs.property("version", project.version)
     filteringCharset = "UTF-8"
 
-    filesMatching("fabric.mod.json") {
+    filesMatching(listOf("fabric.mod.json", "assets/mod-loading-screen/version.txt")) {
         expand("version" to project.version)
     }
 }
@@ -43,6 +43,12 @@ public final class AvailableFeatures {
      */
     public static final long CUSTOM_PROGRESS_BARS = 1L << 5;
 
+    /**
+     * @since 1.0.6
+     * @see LoadingScreenApi#invokeEntrypointParallel
+     */
+    public static final long PARALLEL_ENTRYPOINTS = 1L << 6;
+
     /**
      * All the features that should be available on version 1.0.3.
      *
@@ -57,8 +63,15 @@ public final class AvailableFeatures {
      */
     public static final long V1_0_4 = V1_0_3 | CUSTOM_PROGRESS_BARS;
 
+    /**
+     * All the features that should be available on version 1.0.6.
+     *
+     * @since 1.0.6
+     */
+    public static final long V1_0_6 = V1_0_4 | PARALLEL_ENTRYPOINTS;
+
     private static final long MIN_FEATURE = FINAL_ENTRYPOINTS;
-    private static final long MAX_FEATURE = CUSTOM_PROGRESS_BARS;
+    private static final long MAX_FEATURE = PARALLEL_ENTRYPOINTS;
 
     private AvailableFeatures() {
     }
@@ -78,6 +91,8 @@ public final class AvailableFeatures {
                     return "OPEN_CHECK";
                 case (int)CUSTOM_PROGRESS_BARS:
                     return "CUSTOM_PROGRESS_BARS";
+                case (int)PARALLEL_ENTRYPOINTS:
+                    return "PARALLEL_ENTRYPOINTS";
             }
             return "";
         }
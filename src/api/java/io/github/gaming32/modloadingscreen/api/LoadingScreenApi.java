@@ -28,6 +28,7 @@ public final class LoadingScreenApi {
     private static final MethodHandle IS_OPEN;
     private static final MethodHandle CREATE_CUSTOM_PROGRESS_BAR;
     private static final MethodHandle CUSTOM_PROGRESS_BAR_OP;
+    private static final MethodHandle INVOKE_ENTRYPOINT_PARALLEL;
 
     private static final MethodHandle FABRIC_0_14_23_INVOKE_ENTRYPOINTS;
 
@@ -40,6 +41,7 @@ public final class LoadingScreenApi {
         MethodHandle isOpen = null;
         MethodHandle createCustomProgressBar = null;
         MethodHandle customProgressBarOp = null;
+        MethodHandle invokeEntrypointParallel = null;
 
         final MethodHandles.Lookup lookup = MethodHandles.lookup();
         try {
@@ -97,6 +99,16 @@ public final class LoadingScreenApi {
                 loadFailed(">=1.0.4", AvailableFeatures.CUSTOM_PROGRESS_BARS, e);
             }
 
+            try {
+                invokeEntrypointParallel = lookup.findStatic(
+                    alsClass, "invokeEntrypointParallel",
+                    MethodType.methodType(void.class, String.class, Class.class, Consumer.class)
+                );
+                features |= AvailableFeatures.PARALLEL_ENTRYPOINTS;
+            } catch (Exception e) {
+                loadFailed(">=1.0.6", AvailableFeatures.PARALLEL_ENTRYPOINTS, e);
+            }
+
             System.out.println("[ModLoadingScreen] API loaded with features: " + AvailableFeatures.toString(features));
         } catch (Exception e) {
             final String message = "[ModLoadingScreen] Failed to load LoadingScreenApi. No API features are available.";
@@ -119,6 +131,7 @@ public final class LoadingScreenApi {
         IS_OPEN = isOpen;
         CREATE_CUSTOM_PROGRESS_BAR = createCustomProgressBar;
         CUSTOM_PROGRESS_BAR_OP = customProgressBarOp;
+        INVOKE_ENTRYPOINT_PARALLEL = invokeEntrypointParallel;
 
         MethodHandle invokeEntrypoints = null;
         try {
@@ -224,6 +237,34 @@ public final class LoadingScreenApi {
         }
     }
 
+    /**
+     * Invokes an entrypoint like {@link #invokeEntrypoint}, except that the containers of mods that declare themselves
+     * safe to run concurrently are run on a bounded pool of worker threads. A mod declares this with the custom value
+     * {@code "mod-loading-screen:parallel-safe": true} in its {@code fabric.mod.json}. The other containers are still
+     * run in order on the calling thread. If any entrypoints threw an exception, the first one is rethrown once all
+     * of them have finished, with the rest added as suppressed exceptions.
+     *
+     * @throws RuntimeException If any entrypoints threw an exception
+     *
+     * @apiNote If {@link #getFeatures} doesn't include {@link AvailableFeatures#PARALLEL_ENTRYPOINTS}, this is the same
+     * as {@link #invokeEntrypoint}, and every container runs on the calling thread.
+     *
+     * @see AvailableFeatures#PARALLEL_ENTRYPOINTS
+     *
+     * @since 1.0.6
+     */
+    public static <T> void invokeEntrypointParallel(String name, Class<T> type, Consumer<? super T> invoker) throws RuntimeException {
+        if (INVOKE_ENTRYPOINT_PARALLEL == null) {
+            invokeEntrypoint(name, type, invoker);
+            return;
+        }
+        try {
+            INVOKE_ENTRYPOINT_PARALLEL.invokeExact(name, type, invoker);
+        } catch (Throwable t) {
+            rethrow(t);
+        }
+    }
+
     /**
      * Returns a set of "final entrypoint" names. "Final entrypoints" are entrypoints that, when finished invoking,
      * will close the loading screen. You can use the return value to add or remove entrypoints so that they don't
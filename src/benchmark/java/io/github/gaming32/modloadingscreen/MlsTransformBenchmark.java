@@ -0,0 +1,119 @@
+package io.github.gaming32.modloadingscreen;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Compares how long {@link MlsTransformers} takes to transform each target class on the classpath with how long the
+ * previous approach took just to round-trip it: reading it into a {@code ClassNode} and writing it back with
+ * {@code COMPUTE_FRAMES}, which loads classes to find common superclasses.
+ * <p>
+ * It also measures the {@link MlsTransformCache}, in a temporary directory: a hit, and a miss, which transforms the class
+ * and writes the entry.
+ * <p>
+ * Run with {@code ./gradlew transformBenchmark}.
+ */
+public final class MlsTransformBenchmark {
+    private static final int WARMUP_ITERATIONS = 2_000;
+    private static final int ITERATIONS = 5_000;
+
+    private static int blackhole;
+
+    public static void main(String[] args) throws IOException {
+        final Path cacheDir = Files.createTempDirectory("mls-transform-benchmark");
+        final MlsTransformCache cache = new MlsTransformCache(cacheDir, "benchmark");
+        System.out.printf("%-60s %12s %12s %12s %12s%n", "Class", "Tree (us)", "Stream (us)", "Hit (us)", "Miss (us)");
+        for (final Map.Entry<String, Collection<UnaryOperator<ClassVisitor>>> entry : MlsTransformers.TRANSFORMERS.entrySet()) {
+            final byte[] bytes = readClass(entry.getKey());
+            if (bytes == null) continue;
+            final Collection<UnaryOperator<ClassVisitor>> transformer = entry.getValue();
+
+            String tree;
+            try {
+                tree = String.format("%12.1f", measure(() -> treeRoundTrip(bytes)));
+            } catch (RuntimeException e) {
+                // getCommonSuperClass couldn't load a class
+                tree = String.format("%12s", "failed");
+            }
+            final double stream = measure(() -> MlsTransformers.transform(transformer, bytes));
+
+            final String name = entry.getKey();
+            cache.put(name, cache.key(bytes), MlsTransformers.transform(transformer, bytes));
+            final double hit = measure(() -> cache.get(name, cache.key(bytes)));
+            final String missName = name + "$Miss";
+            final double miss = measure(() -> {
+                final byte[] key = cache.key(bytes);
+                if (cache.get(missName, key) != null) {
+                    throw new IllegalStateException("Cached " + missName + " wasn't deleted");
+                }
+                final byte[] result = MlsTransformers.transform(transformer, bytes);
+                cache.put(missName, key, result);
+                try {
+                    Files.delete(cacheDir.resolve(missName.replace('/', '.') + ".class.cache"));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return result;
+            });
+            System.out.printf("%-60s %s %12.1f %12.1f %12.1f%n", name, tree, stream, hit, miss);
+        }
+        if (blackhole == 42) {
+            System.out.println();
+        }
+    }
+
+    private static byte[] treeRoundTrip(byte[] bytes) {
+        final ClassReader reader = new ClassReader(bytes);
+        final ClassNode clazz = new ClassNode();
+        reader.accept(clazz, 0);
+        final ClassWriter writer = new ClassWriter(reader, ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+        clazz.accept(writer);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Returns the average microseconds per call.
+     */
+    private static double measure(Transform transform) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            blackhole += transform.run().length;
+        }
+        final long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            blackhole += transform.run().length;
+        }
+        return (System.nanoTime() - start) / 1000.0 / ITERATIONS;
+    }
+
+    private static byte[] readClass(String name) throws IOException {
+        try (InputStream is = ClassLoader.getSystemResourceAsStream(name + ".class")) {
+            if (is == null) {
+                return null;
+            }
+            final ByteArrayOutputStream result = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                result.write(buffer, 0, n);
+            }
+            return result.toByteArray();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Transform {
+        byte[] run();
+    }
+}
@@ -1,39 +1,76 @@
 package io.github.gaming32.modloadingscreen;
 
 import com.formdev.flatlaf.FlatDarkLaf;
+import net.fabricmc.loader.api.EntrypointException;
 import net.fabricmc.loader.api.FabricLoader;
 import net.fabricmc.loader.api.ModContainer;
+import net.fabricmc.loader.api.entrypoint.EntrypointContainer;
+import net.fabricmc.loader.api.metadata.CustomValue;
 import net.fabricmc.loader.api.metadata.ModMetadata;
 import net.fabricmc.loader.api.metadata.version.VersionPredicate;
 import org.jetbrains.annotations.Nullable;
 
 import javax.imageio.ImageIO;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
 import javax.swing.*;
 import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.GraphicsEnvironment;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.ConstantCallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.SwitchPoint;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 import static io.github.gaming32.modloadingscreen.MlsTransformers.ACTUAL_LOADING_SCREEN;
 
@@ -46,27 +83,104 @@ public class ActualLoadingScreen {
     public static final boolean IS_HEADLESS = GraphicsEnvironment.isHeadless();
     public static final boolean ENABLE_IPC =
         !IS_IPC_CLIENT && !IS_HEADLESS && !Boolean.getBoolean("mod-loading-screen.disableIpc");
+    private static final int IPC_PROTOCOL_VERSION =
+        Integer.getInteger("mod-loading-screen.ipcProtocol", MlsIpc.PROTOCOL_VERSION);
     public static final String[] SUPPORTED_BACKGROUND_FORMATS = {"gif", "jpeg", "png", "xbm"};
+    public static final String[] SUPPORTED_ICON_FORMATS = {"bmp", "gif", "jpeg", "jpg", "png", "wbmp"};
+    private static final String GC_NOTIFICATION = "com.sun.management.gc.notification";
+    private static final long MIN_MEMORY_POLL_INTERVAL = 100L;
+    private static final long MAX_MEMORY_POLL_INTERVAL = 2000L;
+    private static final long METRICS_POLL_INTERVAL = 500L;
+    private static final Dimension PLACEHOLDER_SIZE = new Dimension(960, 540);
+    private static final Color PLACEHOLDER_COLOR = new Color(0x3c3f41);
+    private static final String OVERALL_BAR_ID = "mod-loading-screen:overall";
+    private static final int OVERALL_BAR_MAX = 1000;
+    private static final String CLASS_LOADING_BAR_ID = "mod-loading-screen:classes";
+    private static final long CLASS_LOADING_POLL_INTERVAL = 250L;
+    private static final String DISCOVERY_BAR_ID = "mod-loading-screen:discovery";
+    private static final String PARALLEL_SAFE = "mod-loading-screen:parallel-safe";
+    private static final int ENTRYPOINT_PARALLELISM = Math.max(1, Integer.getInteger(
+        "mod-loading-screen.entrypointParallelism", Math.min(Runtime.getRuntime().availableProcessors() - 1, 8)
+    ));
 
-    // Unlike progressBars, this is populated on both the IPC client and IPC server, allowing it to be used from the API
-    public static final Map<String, Integer> progress = new LinkedHashMap<>();
-    private static final Map<String, JProgressBar> progressBars = new LinkedHashMap<>();
+    /**
+     * Incremented by the class file transformer for every class defined. When installed as a mod, this class is defined
+     * in the system class loader, so {@link ModLoadingScreen} gets this field reflectively.
+     */
+    public static final LongAdder CLASS_LOAD_COUNTER = new LongAdder();
+
+    // Unlike progressBars, this is populated on both the IPC client and IPC server, allowing it to be used from the API.
+    // The hooks, the class loading thread, and mod discovery's worker threads all update it and the bars in ui, so
+    // every update to either holds this map's lock.
+    public static final Map<String, Integer> progress = Collections.synchronizedMap(new LinkedHashMap<>());
+    private static final Map<String, SharedSlot> sharedSlots = new ConcurrentHashMap<>();
+    private static final AtomicLong maxFrameNanos = new AtomicLong();
+    private static MlsUiModel ui;
+
+    // Only touched on the EDT
+    private static final Map<String, JProgressBar> progressBars = new HashMap<>();
     private static JFrame dialog;
     private static JLabel label;
     private static JProgressBar memoryBar;
-    private static DataOutputStream ipcOut;
+    private static JLabel metricsLabel;
+    private static MlsJava2dRenderer java2dRenderer;
+    private static Timer frameTimer;
+    private static int renderedStructureVersion = -1;
+    private static final SharedSlot sharedMemorySlot = new SharedSlot(MlsSharedProgress.MEMORY_SLOT);
+    private static final long[] sharedSnapshot = new long[4];
+    private static volatile MlsIpcSender ipcSender;
+    private static volatile Process ipcProcess;
+    private static MlsIpcSocket.Server ipcSocketServer;
+    private static volatile MlsIpcSocket.Client ipcSocketClient;
+    private static final AtomicBoolean ipcLost = new AtomicBoolean();
+    private static MlsSharedProgress sharedProgress;
     private static PrintStream logFile;
+    private static long startTime;
+    private static MlsEntrypointTimings entrypointTimings;
+    private static MlsTracer tracer;
+    private static MlsTimingHistory timingHistory;
+    private static boolean overallBarCreated;
+    private static long lastOverallPermille = -1;
+    private static long lastOverallSeconds = -1;
     private static Thread memoryThread;
+    private static Thread classLoadingThread;
+    private static final List<NotificationEmitter> gcEmitters = new ArrayList<>();
+    private static final NotificationListener gcListener = ActualLoadingScreen::onGcNotification;
+    private static final AtomicLong memorySamples = new AtomicLong();
+    private static final AtomicLong memoryUpdates = new AtomicLong();
+    private static final AtomicLong gcNotifications = new AtomicLong();
+    private static long lastMemoryUsageMb = -1;
+    private static long lastMemoryTotalMb = -1;
+    private static volatile MlsMetrics metrics;
     private static boolean titleSet;
+    private static boolean entrypointsFinished;
+    private static Boolean quiltHasInitEntrypoints;
+    private static final Map<String, Boolean> hasInitEntrypoints = new HashMap<>();
+    private static final List<Runnable> closeListeners = new CopyOnWriteArrayList<>();
+    private static final SwitchPoint hooksEnabled = new SwitchPoint();
+    // Set and cleared while holding progress's lock, and read without it by the scan hooks
+    private static volatile MlsModScans modScans;
+    private static long discoveryStart;
 
     static boolean runningOnQuilt; // Accessed from EarlyLoadingAgent
     private static Path configDir;
+    private static Path runDir;
 
     private static boolean enableMemoryDisplay = true;
+    private static boolean enableMetricsDisplay = false;
+    private static boolean enableClassLoadingDisplay = true;
+    private static String renderer = "swing";
+    private static int ipcFlushInterval = 16;
+    private static String ipcTransport = "pipe";
+    private static boolean sharedMemoryProgress = false;
+    private static boolean enableClassDataSharing = true;
+    private static boolean enableTracing = false;
 
     public static void startLoadingScreen(boolean fabricReady) {
+        startTime = System.nanoTime();
         final Path gameDir = fabricReady ? FabricLoader.getInstance().getGameDir() : Paths.get(".").toAbsolutePath();
-        final Path runDir = gameDir.resolve(".cache/mod-loading-screen");
+        // The IPC client is started in the runDir
+        runDir = IS_IPC_CLIENT ? Paths.get("").toAbsolutePath() : gameDir.resolve(".cache/mod-loading-screen");
 
         if (!IS_IPC_CLIENT) {
             try {
@@ -79,6 +193,8 @@ public class ActualLoadingScreen {
             } catch (IOException e) {
                 println("Failed to create logFile", e);
             }
+            entrypointTimings = new MlsEntrypointTimings();
+            timingHistory = MlsTimingHistory.load(runDir.resolve("timing-history.bin"));
         }
 
         if (IS_HEADLESS) {
@@ -90,6 +206,14 @@ public class ActualLoadingScreen {
         if (IS_IPC_CLIENT) {
             runningOnQuilt = Boolean.getBoolean("mlsipc.quilt");
             configDir = Paths.get(System.getProperty("mlsipc.config"));
+            final String sharedProgressPath = System.getProperty("mlsipc.shm");
+            if (sharedProgressPath != null) {
+                try {
+                    sharedProgress = MlsSharedProgress.open(Paths.get(sharedProgressPath));
+                } catch (Exception e) {
+                    println("Failed to open shared progress file", e);
+                }
+            }
         } else {
             if (fabricReady) {
                 runningOnQuilt = FabricLoader.getInstance().isModLoaded("quilt_loader");
@@ -109,20 +233,33 @@ public class ActualLoadingScreen {
             println("Failed to create config dir", e);
         }
         loadConfig();
+        if (enableTracing && !IS_IPC_CLIENT) {
+            tracer = new MlsTracer(startTime);
+        }
 
         if (ENABLE_IPC) {
             final Path flatlafDestPath = runDir.resolve("flatlaf.jar");
             try {
                 if (fabricReady) {
-                    Files.copy(
-                        FabricLoader.getInstance()
-                            .getModContainer("mod-loading-screen")
-                            .orElseThrow(AssertionError::new)
-                            .getRootPaths().get(0)
-                            .resolve(MlsConstants.FLATLAF_PATH),
-                        flatlafDestPath, StandardCopyOption.REPLACE_EXISTING
-                    );
-                    println("Extracted flatlaf.jar");
+                    final Path flatlafSourcePath = FabricLoader.getInstance()
+                        .getModContainer("mod-loading-screen")
+                        .orElseThrow(AssertionError::new)
+                        .getRootPaths().get(0)
+                        .resolve(MlsConstants.FLATLAF_PATH);
+                    try {
+                        if (MlsCache.extractIfChanged(
+                            flatlafDestPath, MlsCache.zipEntryKey(flatlafSourcePath),
+                            () -> Files.newInputStream(flatlafSourcePath)
+                        )) {
+                            println("Extracted flatlaf.jar");
+                        } else {
+                            println("Extracted flatlaf.jar is up to date");
+                        }
+                    } catch (IOException e) {
+                        // On Windows, another instance sharing this game dir may have the old copy open
+                        if (!Files.isRegularFile(flatlafDestPath)) throw e;
+                        println("Failed to update flatlaf.jar. Using the existing copy.", e);
+                    }
                 }
                 final Path mlsJarPath;
                 if (fabricReady) {
@@ -140,22 +277,54 @@ public class ActualLoadingScreen {
                             .toURI()
                     );
                 }
-                ipcOut = new DataOutputStream(
-                    new ProcessBuilder(
-                        System.getProperty("java.home") + "/bin/java",
-                        "-Dmlsipc.present=true",
-                        "-Dmlsipc.quilt=" + runningOnQuilt,
-                        "-Dmlsipc.config=" + configDir,
-                        "-cp", mlsJarPath + File.pathSeparator + flatlafDestPath,
-                        ACTUAL_LOADING_SCREEN.replace('/', '.')
-                    )
-                        .redirectOutput(ProcessBuilder.Redirect.INHERIT)
-                        .redirectError(ProcessBuilder.Redirect.INHERIT)
-                        .redirectInput(ProcessBuilder.Redirect.PIPE)
-                        .directory(runDir.toFile())
-                        .start()
-                        .getOutputStream()
-                );
+                final List<String> command = new ArrayList<>();
+                command.add(System.getProperty("java.home") + "/bin/java");
+                command.add("-Dmlsipc.present=true");
+                command.add("-Dmlsipc.quilt=" + runningOnQuilt);
+                command.add("-Dmlsipc.config=" + configDir);
+                if (enableClassDataSharing) {
+                    addClassDataSharingArgs(command, runDir, mlsJarPath, flatlafDestPath);
+                }
+                if (sharedMemoryProgress && IPC_PROTOCOL_VERSION >= 2) {
+                    final Path sharedProgressPath = createSharedProgress(runDir);
+                    if (sharedProgressPath != null) {
+                        command.add("-Dmlsipc.shm=" + sharedProgressPath);
+                    }
+                }
+                if (ipcTransport.equals("socket")) {
+                    try {
+                        final String token = MlsIpcSocket.newToken();
+                        ipcSocketServer = new MlsIpcSocket.Server(token);
+                        command.add("-Dmlsipc.socket=" + ipcSocketServer.getPort());
+                        command.add("-Dmlsipc.token=" + token);
+                    } catch (IOException e) {
+                        println("Failed to open IPC socket. Falling back to a pipe.", e);
+                    }
+                }
+                command.add("-Dmlsipc.spawnTime=" + System.currentTimeMillis());
+                command.add("-cp");
+                command.add(renderer.equals("swing") ? mlsJarPath + File.pathSeparator + flatlafDestPath : mlsJarPath.toString());
+                command.add(ACTUAL_LOADING_SCREEN.replace('/', '.'));
+                ipcProcess = new ProcessBuilder(command)
+                    .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .redirectInput(ProcessBuilder.Redirect.PIPE)
+                    .directory(runDir.toFile())
+                    .start();
+                final MlsIpcSocket.Server socketServer = ipcSocketServer;
+                if (socketServer != null) {
+                    socketServer.setClientProcess(ipcProcess);
+                    ipcProcess.getOutputStream().close();
+                    ipcSender = new MlsIpcSender(
+                        new MlsIpc.Writer(socketServer.getOutput(), IPC_PROTOCOL_VERSION),
+                        ipcFlushInterval, socketServer::canSend
+                    );
+                } else {
+                    ipcSender = new MlsIpcSender(
+                        new MlsIpc.Writer(new BufferedOutputStream(ipcProcess.getOutputStream(), 8192), IPC_PROTOCOL_VERSION),
+                        ipcFlushInterval, () -> true
+                    );
+                }
             } catch (Exception e) {
                 println("Failed to setup IPC client. Aborting.", e);
                 return;
@@ -164,38 +333,53 @@ public class ActualLoadingScreen {
                 setFabricTitle();
             }
             startMemoryThread();
+            startClassLoadingThread();
             return;
         }
 
-        FlatDarkLaf.setup();
-        UIManager.getDefaults().put("ProgressBar.horizontalSize", new Dimension(146, 18));
-        UIManager.getDefaults().put("ProgressBar.font", UIManager.getFont("ProgressBar.font").deriveFont(18f));
-        UIManager.getDefaults().put("ProgressBar.selectionForeground", new Color(255, 255, 255));
-
-        dialog = new JFrame();
+        ui = new MlsUiModel();
         if (fabricReady) {
             setFabricTitle();
         } else {
-            dialog.setTitle(runningOnQuilt ? "Loading Quilt Loader" : "Loading Fabric Loader");
+            ui.title = runningOnQuilt ? "Loading Quilt Loader" : "Loading Fabric Loader";
         }
-        dialog.setResizable(false);
-
         try {
-            dialog.setIconImage(ImageIO.read(findImageUrl("icon", "icon.png", ImageIO.getReaderFileSuffixes())));
+            SwingUtilities.invokeAndWait(ActualLoadingScreen::createWindow);
         } catch (Exception e) {
-            println("Failed to load icon.png", e);
+            println("Failed to open loading screen window", e);
+            ui = null;
+            return;
         }
+        if (IS_IPC_CLIENT) {
+            reportStartupTime();
+        } else {
+            println("Window visible " + sinceStart());
+        }
+        startImageLoader();
+        startMemoryThread();
+        startClassLoadingThread();
+    }
 
-        ImageIcon background;
-        try {
-            background = new ImageIcon(findImageUrl(
-                "background", runningOnQuilt ? "quilt-banner.png" : "aof4.png", SUPPORTED_BACKGROUND_FORMATS
-            ));
-        } catch (Exception e) {
-            println("Failed to load background.png", e);
-            background = null;
+    private static void createWindow() {
+        if (renderer.equals("java2d")) {
+            createJava2dWindow();
+            return;
         }
-        label = new JLabel(background);
+
+        FlatDarkLaf.setup();
+        UIManager.getDefaults().put("ProgressBar.horizontalSize", new Dimension(146, 18));
+        UIManager.getDefaults().put("ProgressBar.font", UIManager.getFont("ProgressBar.font").deriveFont(18f));
+        UIManager.getDefaults().put("ProgressBar.selectionForeground", new Color(255, 255, 255));
+
+        dialog = new JFrame();
+        dialog.setTitle(ui.title);
+        dialog.setResizable(false);
+
+        // The background is loaded by startImageLoader
+        label = new JLabel();
+        label.setOpaque(true);
+        label.setBackground(PLACEHOLDER_COLOR);
+        label.setPreferredSize(PLACEHOLDER_SIZE);
         final BoxLayout layout = new BoxLayout(label, BoxLayout.Y_AXIS);
         label.setLayout(layout);
         label.add(Box.createVerticalGlue());
@@ -207,12 +391,202 @@ public class ActualLoadingScreen {
             dialog.add(memoryBar, BorderLayout.NORTH);
         }
 
-        dialog.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
+        if (enableMetricsDisplay) {
+            metricsLabel = new JLabel(" ", SwingConstants.CENTER);
+            dialog.add(metricsLabel, BorderLayout.SOUTH);
+        }
+
+        setCloseOperation();
+        renderFrame();
         dialog.pack();
         dialog.setLocationRelativeTo(null);
         dialog.setVisible(true);
 
-        startMemoryThread();
+        frameTimer = new Timer(MlsUiModel.FRAME_INTERVAL_MILLIS, e -> renderFrame());
+        frameTimer.start();
+    }
+
+    private static void createJava2dWindow() {
+        dialog = new JFrame();
+        dialog.setTitle(ui.title);
+        dialog.setResizable(false);
+
+        java2dRenderer = new MlsJava2dRenderer(ui, enableMemoryDisplay, enableMetricsDisplay, maxFrameNanos);
+        dialog.add(java2dRenderer);
+
+        setCloseOperation();
+        dialog.pack();
+        dialog.setLocationRelativeTo(null);
+        dialog.setVisible(true);
+
+        frameTimer = new Timer(MlsUiModel.FRAME_INTERVAL_MILLIS, e -> renderFrame());
+        frameTimer.start();
+    }
+
+    private static void setCloseOperation() {
+        if (!IS_IPC_CLIENT) {
+            dialog.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
+            return;
+        }
+        // The exit code tells the game that the user closed the window, as opposed to the client failing
+        dialog.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
+        dialog.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                System.exit(MlsIpc.EXIT_WINDOW_CLOSED);
+            }
+        });
+    }
+
+    private static void startImageLoader() {
+        final Thread imageLoader = new Thread(() -> {
+            try {
+                final Image icon = ImageIO.read(findIconUrl());
+                SwingUtilities.invokeLater(() -> {
+                    if (dialog != null) {
+                        dialog.setIconImage(icon);
+                    }
+                });
+            } catch (Exception e) {
+                println("Failed to load icon.png", e);
+            }
+            final Image background = loadBackground();
+            if (background != null) {
+                SwingUtilities.invokeLater(() -> showBackground(background));
+            }
+        }, "MlsImageLoader");
+        imageLoader.setDaemon(true);
+        imageLoader.start();
+    }
+
+    private static void showBackground(Image background) {
+        if (dialog == null) return;
+        final JComponent component;
+        if (java2dRenderer != null) {
+            java2dRenderer.setBackgroundImage(background);
+            component = java2dRenderer;
+        } else {
+            label.setIcon(new ImageIcon(background));
+            label.setPreferredSize(null);
+            component = label;
+        }
+        final Dimension oldSize = dialog.getSize();
+        dialog.pack();
+        if (!dialog.getSize().equals(oldSize)) {
+            dialog.setLocationRelativeTo(null);
+        }
+        component.paintImmediately(0, 0, component.getWidth(), component.getHeight());
+        println("Background painted " + sinceStart());
+    }
+
+    private static String sinceStart() {
+        final long spawnTime = Long.getLong("mlsipc.spawnTime", 0L);
+        if (IS_IPC_CLIENT && spawnTime != 0L) {
+            return System.currentTimeMillis() - spawnTime + "ms after launch";
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + "ms after the loading screen started";
+    }
+
+    private static Image loadBackground() {
+        // Leave some room for the window decorations and the memory bar
+        final Rectangle screen = GraphicsEnvironment.getLocalGraphicsEnvironment().getMaximumWindowBounds();
+        try {
+            final URL url = findImageUrl(
+                "background", runningOnQuilt ? "quilt-banner.png" : "aof4.png", SUPPORTED_BACKGROUND_FORMATS
+            );
+            if (url.getPath().endsWith(".gif")) {
+                // GIFs may be animated, which the cache can't represent
+                return new ImageIcon(url).getImage();
+            }
+            return MlsBackgroundCache.load(url, runDir, screen.width * 9 / 10, screen.height * 9 / 10);
+        } catch (Exception e) {
+            println("Failed to load background.png", e);
+            return null;
+        }
+    }
+
+    /**
+     * Applies the changes to {@link #ui} since the last frame to the window. Called on the EDT.
+     */
+    private static void renderFrame() {
+        final MlsUiModel ui = ActualLoadingScreen.ui;
+        if (ui == null || dialog == null) return;
+        if (sharedProgress != null) {
+            sampleSharedProgress(ui);
+        }
+        if (!ui.takeDirty()) {
+            if (java2dRenderer != null && java2dRenderer.isAnimating()) {
+                java2dRenderer.repaint();
+            }
+            return;
+        }
+
+        if (!ui.title.equals(dialog.getTitle())) {
+            dialog.setTitle(ui.title);
+        }
+        if (java2dRenderer != null) {
+            // The renderer records its own frame time when it paints
+            java2dRenderer.repaint();
+            return;
+        }
+
+        final long start = System.nanoTime();
+
+        final int structureVersion = ui.getStructureVersion();
+        final boolean layout = structureVersion != renderedStructureVersion;
+        if (layout) {
+            renderedStructureVersion = structureVersion;
+            final Set<String> liveIds = new HashSet<>();
+            for (final MlsUiModel.Bar bar : ui.getBars()) {
+                liveIds.add(bar.id);
+            }
+            final Iterator<Map.Entry<String, JProgressBar>> it = progressBars.entrySet().iterator();
+            while (it.hasNext()) {
+                final Map.Entry<String, JProgressBar> entry = it.next();
+                if (!liveIds.contains(entry.getKey())) {
+                    label.remove(entry.getValue());
+                    it.remove();
+                }
+            }
+            for (final MlsUiModel.Bar bar : ui.getBars()) {
+                if (progressBars.containsKey(bar.id)) continue;
+                final JProgressBar progressBar = new JProgressBar();
+                progressBar.setStringPainted(true);
+                progressBars.put(bar.id, progressBar);
+                label.add(progressBar, 1);
+            }
+        }
+
+        for (final MlsUiModel.Bar bar : ui.getBars()) {
+            final JProgressBar progressBar = progressBars.get(bar.id);
+            if (progressBar == null) continue;
+            final int minimum = bar.minimum;
+            final int maximum = Math.max(minimum, bar.maximum);
+            progressBar.getModel().setRangeProperties(
+                Math.max(minimum, Math.min(bar.value, maximum)), 0, minimum, maximum, false
+            );
+            progressBar.setIndeterminate(bar.indeterminate);
+            progressBar.setString(bar.text);
+        }
+
+        if (memoryBar != null) {
+            final double bytesPerMb = 1024L * 1024L;
+            final int usageMb = (int)Math.round(ui.memoryUsage / bytesPerMb);
+            final int totalMb = (int)Math.round(ui.memoryTotal / bytesPerMb);
+            memoryBar.getModel().setRangeProperties(usageMb, 0, 0, totalMb, false);
+            memoryBar.setString(usageMb + " MB / " + totalMb + " MB");
+        }
+
+        if (metricsLabel != null && !ui.metricsText.isEmpty()) {
+            metricsLabel.setText(ui.metricsText);
+        }
+
+        if (layout) {
+            label.revalidate();
+            label.repaint();
+        }
+        final long frameNanos = System.nanoTime() - start;
+        maxFrameNanos.accumulateAndGet(frameNanos, Math::max);
     }
 
     private static void loadConfig() {
@@ -230,8 +604,62 @@ public class ActualLoadingScreen {
             enableMemoryDisplay = Boolean.parseBoolean(configProperties.getProperty("enableMemoryDisplay"));
         }
 
+        if (configProperties.getProperty("enableMetricsDisplay") != null) {
+            enableMetricsDisplay = Boolean.parseBoolean(configProperties.getProperty("enableMetricsDisplay"));
+        }
+
+        if (configProperties.getProperty("enableClassLoadingDisplay") != null) {
+            enableClassLoadingDisplay = Boolean.parseBoolean(configProperties.getProperty("enableClassLoadingDisplay"));
+        }
+
+        if (configProperties.getProperty("renderer") != null) {
+            final String value = configProperties.getProperty("renderer");
+            if (value.equals("swing") || value.equals("java2d")) {
+                renderer = value;
+            } else {
+                println("Unknown renderer " + value);
+            }
+        }
+
+        if (configProperties.getProperty("ipcFlushInterval") != null) {
+            try {
+                ipcFlushInterval = Integer.parseInt(configProperties.getProperty("ipcFlushInterval"));
+            } catch (NumberFormatException e) {
+                println("Invalid ipcFlushInterval " + configProperties.getProperty("ipcFlushInterval"), e);
+            }
+        }
+
+        if (configProperties.getProperty("ipcTransport") != null) {
+            final String transport = configProperties.getProperty("ipcTransport");
+            if (transport.equals("pipe") || transport.equals("socket")) {
+                ipcTransport = transport;
+            } else {
+                println("Unknown ipcTransport " + transport);
+            }
+        }
+
+        if (configProperties.getProperty("sharedMemoryProgress") != null) {
+            sharedMemoryProgress = Boolean.parseBoolean(configProperties.getProperty("sharedMemoryProgress"));
+        }
+
+        if (configProperties.getProperty("enableClassDataSharing") != null) {
+            enableClassDataSharing = Boolean.parseBoolean(configProperties.getProperty("enableClassDataSharing"));
+        }
+
+        if (configProperties.getProperty("enableTracing") != null) {
+            enableTracing = Boolean.parseBoolean(configProperties.getProperty("enableTracing"));
+        }
+
         configProperties.clear();
         configProperties.setProperty("enableMemoryDisplay", Boolean.toString(enableMemoryDisplay));
+        configProperties.setProperty("enableMetricsDisplay", Boolean.toString(enableMetricsDisplay));
+        configProperties.setProperty("enableClassLoadingDisplay", Boolean.toString(enableClassLoadingDisplay));
+        configProperties.setProperty("renderer", renderer);
+        configProperties.setProperty("ipcFlushInterval", Integer.toString(ipcFlushInterval));
+        configProperties.setProperty("ipcTransport", ipcTransport);
+        configProperties.setProperty("sharedMemoryProgress", Boolean.toString(sharedMemoryProgress));
+        configProperties.setProperty("enableClassDataSharing", Boolean.toString(enableClassDataSharing));
+        configProperties.setProperty("enableTracing", Boolean.toString(enableTracing));
 
         try (OutputStream os = Files.newOutputStream(configFile)) {
             configProperties.store(os,
@@ -239,7 +667,23 @@ public class ActualLoadingScreen {
                 "The supported background image formats are: " + String.join(", ", SUPPORTED_BACKGROUND_FORMATS) + "\n" +
                 "\n" +
                 "To use a custom icon image, create a file named icon.png in this folder. It should be square.\n" +
-                "The supported icon image formats are: " + String.join(", ", ImageIO.getReaderFileSuffixes()) + "\n"
+                "The supported icon image formats are: " + String.join(", ", SUPPORTED_ICON_FORMATS) +
+                    ", and any other format an ImageIO plugin on the classpath can read\n" +
+                "\n" +
+                "enableMetricsDisplay shows a strip with GC, metaspace, code cache, direct memory, JIT, and CPU usage.\n" +
+                "enableClassLoadingDisplay shows how many classes have been loaded, out of how many the last launch loaded.\n" +
+                "renderer is how the loading screen is drawn: \"swing\" with FlatLaf progress bars, or \"java2d\", which paints\n" +
+                "everything itself and starts faster.\n" +
+                "ipcFlushInterval is how often, in milliseconds, queued updates are sent to the loading screen window.\n" +
+                "Set it to 0 to send every update immediately.\n" +
+                "ipcTransport is how updates are sent to the loading screen window: \"pipe\" through its standard input,\n" +
+                "or \"socket\" through a loopback connection, over which the window also reports how it's keeping up.\n" +
+                "sharedMemoryProgress makes custom progress bars and the memory bar share their values with the window\n" +
+                "through a memory-mapped file instead of sending them as messages.\n" +
+                "enableClassDataSharing lets the loading screen window start faster on Java 13+ by keeping a class data\n" +
+                "sharing archive in .cache/mod-loading-screen.\n" +
+                "enableTracing records what the loading screen shows to .cache/mod-loading-screen/trace.json, which can be\n" +
+                "opened in chrome://tracing or Perfetto.\n"
             );
         } catch (Exception e) {
             println("Failed to write config", e);
@@ -258,24 +702,459 @@ public class ActualLoadingScreen {
         return ClassLoader.getSystemResource("assets/mod-loading-screen/" + defaultFilename);
     }
 
+    /**
+     * Finds the icon like {@link #findImageUrl}, but also accepts any other format an ImageIO plugin on the classpath
+     * can read. The plugins are only looked up if there's an icon in a format that isn't in the list.
+     */
+    private static URL findIconUrl() throws IOException {
+        for (final String format : SUPPORTED_ICON_FORMATS) {
+            final Path path = configDir.resolve("icon." + format);
+            if (Files.isRegularFile(path)) {
+                return path.toUri().toURL();
+            }
+        }
+        if (Files.isDirectory(configDir)) {
+            try (DirectoryStream<Path> candidates = Files.newDirectoryStream(configDir, "icon.*")) {
+                final Iterator<Path> iterator = candidates.iterator();
+                if (iterator.hasNext()) {
+                    final Set<String> suffixes = new HashSet<>(Arrays.asList(ImageIO.getReaderFileSuffixes()));
+                    while (iterator.hasNext()) {
+                        final Path path = iterator.next();
+                        final String filename = path.getFileName().toString();
+                        if (suffixes.contains(filename.substring("icon.".length())) && Files.isRegularFile(path)) {
+                            return path.toUri().toURL();
+                        }
+                    }
+                }
+            }
+        }
+        return ClassLoader.getSystemResource("assets/mod-loading-screen/icon.png");
+    }
+
+    private static void addClassDataSharingArgs(List<String> command, Path runDir, Path mlsJarPath, Path flatlafPath) {
+        // Dynamic archives need Java 13, and other VMs (such as OpenJ9) don't understand the HotSpot flags
+        final String vmName = System.getProperty("java.vm.name", "");
+        if (MlsCache.javaVersion() < 13 || !(vmName.contains("HotSpot") || vmName.contains("OpenJDK"))) return;
+        // In a development environment, these are directories
+        if (!Files.isRegularFile(mlsJarPath) || !Files.isRegularFile(flatlafPath)) return;
+
+        final String key;
+        try {
+            final MessageDigest digest = MlsCache.sha256();
+            digest.update((
+                System.getProperty("java.vm.vendor") + '\0' +
+                    System.getProperty("java.vm.version") + '\0' +
+                    System.getProperty("java.home") + '\0' +
+                    renderer + '\0' +
+                    classpathEntryKey(mlsJarPath) + '\0' +
+                    classpathEntryKey(flatlafPath)
+            ).getBytes(StandardCharsets.UTF_8));
+            key = MlsCache.hex(digest.digest()).substring(0, 16);
+        } catch (IOException e) {
+            println("Failed to hash jars for class data sharing", e);
+            return;
+        }
+
+        final Path archive = runDir.resolve("ipc-client-" + key + ".jsa");
+        command.add("-Dmlsipc.cdsKey=" + key);
+        if (Files.isRegularFile(archive)) {
+            command.add("-XX:SharedArchiveFile=" + archive);
+            command.add("-Dmlsipc.cds=use");
+            return;
+        }
+
+        try (DirectoryStream<Path> outdated = Files.newDirectoryStream(runDir, "ipc-client-*.jsa")) {
+            for (final Path path : outdated) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            println("Failed to delete outdated class data sharing archives", e);
+        }
+        println("Creating class data sharing archive " + archive.getFileName());
+        command.add("-XX:ArchiveClassesAtExit=" + archive);
+        command.add("-Dmlsipc.cds=dump");
+    }
+
+    /**
+     * HotSpot rejects an archive if the size or modification time of a jar on the classpath changed, even if its
+     * contents didn't, so those are part of the key along with the hash.
+     */
+    private static String classpathEntryKey(Path jar) throws IOException {
+        final BasicFileAttributes attributes = Files.readAttributes(jar, BasicFileAttributes.class);
+        return MlsCache.sha256(jar) + '/' + attributes.size() + '/' + attributes.lastModifiedTime().toMillis();
+    }
+
+    private static void reportStartupTime() {
+        final long spawnTime = Long.getLong("mlsipc.spawnTime", 0L);
+        if (spawnTime == 0L) return;
+        final long startupTime = System.currentTimeMillis() - spawnTime;
+        final String cdsMode = System.getProperty("mlsipc.cds");
+        final String cdsKey = System.getProperty("mlsipc.cdsKey");
+        if (cdsMode == null || cdsKey == null) {
+            println("Window visible " + startupTime + "ms after launch");
+            return;
+        }
+
+        // The IPC client runs in the runDir
+        final Path timingsFile = Paths.get("ipc-client-cds.properties");
+        final Properties timings = new Properties();
+        if (cdsMode.equals("dump")) {
+            println("Window visible " + startupTime + "ms after launch. A class data sharing archive will be created on exit.");
+            timings.setProperty(cdsKey, Long.toString(startupTime));
+            try (OutputStream os = Files.newOutputStream(timingsFile)) {
+                timings.store(os, "Startup times of the launches that created the class data sharing archives");
+            } catch (Exception e) {
+                println("Failed to write " + timingsFile, e);
+            }
+            return;
+        }
+
+        try (InputStream is = Files.newInputStream(timingsFile)) {
+            timings.load(is);
+        } catch (NoSuchFileException ignored) {
+        } catch (Exception e) {
+            println("Failed to read " + timingsFile, e);
+        }
+        final String baseline = timings.getProperty(cdsKey);
+        if (baseline == null) {
+            println("Window visible " + startupTime + "ms after launch with class data sharing");
+            return;
+        }
+        println(
+            "Window visible " + startupTime + "ms after launch with class data sharing, saving " +
+                (Long.parseLong(baseline) - startupTime) + "ms compared to the launch that created the archive"
+        );
+    }
+
+    private static Path createSharedProgress(Path runDir) {
+        final long staleBefore = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1);
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(runDir, "progress-*.shm")) {
+            for (final Path path : stale) {
+                try {
+                    if (Files.getLastModifiedTime(path).toMillis() < staleBefore) {
+                        Files.delete(path);
+                    }
+                } catch (IOException ignored) {
+                    // Still mapped by another instance on Windows
+                }
+            }
+        } catch (IOException e) {
+            println("Failed to clean up old shared progress files", e);
+        }
+        try {
+            final Path path = Files.createTempFile(runDir, "progress-", ".shm");
+            path.toFile().deleteOnExit();
+            sharedProgress = MlsSharedProgress.create(path);
+            println("Sharing progress through " + path);
+            return path;
+        } catch (Exception e) {
+            println("Failed to create shared progress file. Progress will be sent as messages.", e);
+            return null;
+        }
+    }
+
+    private static void sampleSharedProgress(MlsUiModel ui) {
+        final long[] snapshot = sharedSnapshot;
+        if (
+            sharedProgress.read(sharedMemorySlot.index, snapshot) &&
+                snapshot[0] != 0 && snapshot[0] != sharedMemorySlot.lastSeq
+        ) {
+            sharedMemorySlot.lastSeq = snapshot[0];
+            updateMemoryUsage0(snapshot[1], snapshot[3]);
+        }
+        synchronized (progress) {
+            for (final Map.Entry<String, SharedSlot> entry : sharedSlots.entrySet()) {
+                final SharedSlot slot = entry.getValue();
+                if (!sharedProgress.read(slot.index, snapshot) || snapshot[0] == slot.lastSeq) continue;
+                slot.lastSeq = snapshot[0];
+                final MlsUiModel.Bar bar = ui.getBar(entry.getKey());
+                if (bar == null) continue;
+                bar.value = (int)snapshot[1];
+                bar.minimum = (int)snapshot[2];
+                bar.maximum = (int)snapshot[3];
+                ui.markDirty();
+            }
+        }
+    }
+
+    /**
+     * Memory usage is sampled after every GC, which is when it drops, and by a poll to see it grow. The poll runs
+     * every {@link #MIN_MEMORY_POLL_INTERVAL}ms while the heap is growing quickly, and backs off to
+     * {@link #MAX_MEMORY_POLL_INTERVAL}ms while it's stable, or {@link #METRICS_POLL_INTERVAL}ms if the metrics are
+     * shown.
+     * <p>
+     * The management beans take a while to initialize, so they're looked up on the memory thread, not at startup.
+     */
     private static void startMemoryThread() {
-        if (IS_IPC_CLIENT || !enableMemoryDisplay) return;
-        updateMemoryUsage();
+        if (IS_IPC_CLIENT || !enableMemoryDisplay && !enableMetricsDisplay) return;
         memoryThread = new Thread(() -> {
+            final long initialUsage = updateMemoryUsage();
+            final MlsMetrics newMetrics = enableMetricsDisplay ? new MlsMetrics() : null;
+            synchronized (gcEmitters) {
+                // stopMemoryThread interrupts before taking the lock, so this doesn't register after it cleaned up
+                if (Thread.currentThread().isInterrupted()) return;
+                metrics = newMetrics;
+                for (final GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                    if (gc instanceof NotificationEmitter) {
+                        ((NotificationEmitter)gc).addNotificationListener(gcListener, null, null);
+                        gcEmitters.add((NotificationEmitter)gc);
+                    }
+                }
+            }
+            updateMetrics();
+
+            final long maxMemory = Runtime.getRuntime().maxMemory();
+            final long maxInterval = enableMetricsDisplay ? METRICS_POLL_INTERVAL : MAX_MEMORY_POLL_INTERVAL;
+            long interval = MIN_MEMORY_POLL_INTERVAL;
+            long lastUsage = initialUsage;
             while (true) {
                 try {
                     //noinspection BusyWait
-                    Thread.sleep(100L);
+                    Thread.sleep(interval);
                 } catch (InterruptedException e) {
                     break;
                 }
-                updateMemoryUsage();
+                final long usage = updateMemoryUsage();
+                updateMetrics();
+                final long growth = usage - lastUsage;
+                lastUsage = usage;
+                if (growth > maxMemory / 50) {
+                    interval = MIN_MEMORY_POLL_INTERVAL;
+                } else if (Math.abs(growth) < maxMemory / 200) {
+                    interval = Math.min(interval * 2, maxInterval);
+                } else {
+                    interval = Math.max(interval / 2, MIN_MEMORY_POLL_INTERVAL);
+                }
             }
         }, "MemoryUsageListener");
         memoryThread.setDaemon(true);
         memoryThread.start();
     }
 
+    private static void onGcNotification(Notification notification, Object handback) {
+        if (!GC_NOTIFICATION.equals(notification.getType())) return;
+        gcNotifications.incrementAndGet();
+        updateMemoryUsage();
+        updateMetrics();
+    }
+
+    private static synchronized void updateMetrics() {
+        if (metrics == null) return;
+        final long[] sample = metrics.sample();
+        if (sample == null) return;
+        if (sendIpc(MlsIpc.Packet.metrics(sample))) return;
+        updateMetrics0(sample);
+    }
+
+    private static void updateMetrics0(long[] sample) {
+        final MlsUiModel ui = ActualLoadingScreen.ui;
+        if (ui == null || !enableMetricsDisplay) return;
+
+        ui.metricsText = MlsMetrics.format(sample);
+        ui.markDirty();
+    }
+
+    private static void stopMemoryThread() {
+        if (memoryThread == null) return;
+        memoryThread.interrupt();
+        memoryThread = null;
+        synchronized (gcEmitters) {
+            metrics = null;
+            for (final NotificationEmitter emitter : gcEmitters) {
+                try {
+                    emitter.removeNotificationListener(gcListener);
+                } catch (ListenerNotFoundException ignored) {
+                }
+            }
+            gcEmitters.clear();
+        }
+        println(
+            "Took " + memorySamples.get() + " memory samples (" + gcNotifications.get() + " after a GC) and sent " +
+                memoryUpdates.get() + " memory updates"
+        );
+    }
+
+    /**
+     * Shows {@link #CLASS_LOAD_COUNTER} as a custom bar, out of the total the last launch got to before its loading
+     * screen closed.
+     */
+    private static void startClassLoadingThread() {
+        if (IS_IPC_CLIENT || !enableClassLoadingDisplay) return;
+        final Path statsFile = runDir.resolve("class-loading.properties");
+        final Properties stats = new Properties();
+        try (InputStream is = Files.newInputStream(statsFile)) {
+            stats.load(is);
+        } catch (NoSuchFileException ignored) {
+        } catch (Exception e) {
+            println("Failed to read " + statsFile, e);
+        }
+        int expected = 0;
+        try {
+            expected = Integer.parseInt(stats.getProperty("classes", "0"));
+        } catch (NumberFormatException ignored) {
+        }
+
+        createCustomProgressBar(CLASS_LOADING_BAR_ID, "Loading classes", expected);
+        if (expected <= 0) {
+            customProgressBarOp(CLASS_LOADING_BAR_ID, MlsIpc.OP_INDETERMINATE, 1, null);
+        }
+        classLoadingThread = new Thread(() -> {
+            final long start = System.nanoTime();
+            long lastTime = start;
+            long lastCount = CLASS_LOAD_COUNTER.sum();
+            while (true) {
+                try {
+                    //noinspection BusyWait
+                    Thread.sleep(CLASS_LOADING_POLL_INTERVAL);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                final long now = System.nanoTime();
+                final long count = CLASS_LOAD_COUNTER.sum();
+                if (count == lastCount) {
+                    lastTime = now;
+                    continue;
+                }
+                final long rate = (count - lastCount) * 1_000_000_000L / (now - lastTime);
+                lastTime = now;
+                lastCount = count;
+                customProgressBarOp(CLASS_LOADING_BAR_ID, MlsIpc.OP_PROGRESS, (int)count, null);
+                customProgressBarOp(
+                    CLASS_LOADING_BAR_ID, MlsIpc.OP_TITLE, 0, "Loaded " + count + " classes \u2014 " + rate + "/s"
+                );
+            }
+            final long count = CLASS_LOAD_COUNTER.sum();
+            final long seconds = Math.max((System.nanoTime() - start) / 1_000_000_000L, 1L);
+            println("Loaded " + count + " classes while the loading screen was open, " + count / seconds + "/s on average");
+            stats.setProperty("classes", Long.toString(count));
+            stats.setProperty("classesPerSecond", Long.toString(count / seconds));
+            try (OutputStream os = Files.newOutputStream(statsFile)) {
+                stats.store(os, "Classes loaded by the last launch before its loading screen closed");
+            } catch (Exception e) {
+                println("Failed to write " + statsFile, e);
+            }
+        }, "MlsClassLoadingCounter");
+        classLoadingThread.setDaemon(true);
+        classLoadingThread.start();
+    }
+
+    private static void stopClassLoadingThread() {
+        if (classLoadingThread == null) return;
+        // It saves the stats on its own once it sees the interrupt, so there's no need to hold up the game thread for it
+        classLoadingThread.interrupt();
+        classLoadingThread = null;
+    }
+
+    /**
+     * Bootstrap for the hooks {@link MlsTransformers} inserts. Each call site calls the hook of the same name until the
+     * entrypoints are finished, and does nothing after that, so the JIT can drop it from the loader's code.
+     */
+    public static CallSite bootstrapHook(MethodHandles.Lookup caller, String name, MethodType type)
+        throws NoSuchMethodException, IllegalAccessException {
+        final MethodHandles.Lookup lookup = MethodHandles.lookup();
+        final MethodHandle hook = lookup.findStatic(ActualLoadingScreen.class, name, type);
+        final MethodHandle noop = MethodHandles.dropArguments(
+            lookup.findStatic(ActualLoadingScreen.class, "noop", MethodType.methodType(void.class)),
+            0, type.parameterArray()
+        );
+        return new ConstantCallSite(hooksEnabled.guardWithTest(hook, noop));
+    }
+
+    private static void noop() {
+    }
+
+    /**
+     * Shows the discovery bar, which is indeterminate until candidates are found. On Quilt, it stays that way until
+     * resolution is finished.
+     */
+    public static void beforeModDiscovery() {
+        synchronized (progress) {
+            if (modScans != null) return;
+            modScans = new MlsModScans();
+            discoveryStart = System.nanoTime();
+            println("Discovering mods");
+            createCustomProgressBar(DISCOVERY_BAR_ID, "Discovering mods", 0);
+            customProgressBarOp(DISCOVERY_BAR_ID, MlsIpc.OP_INDETERMINATE, 1, null);
+        }
+    }
+
+    public static void modCandidateFound() {
+        synchronized (progress) {
+            if (modScans == null) return;
+            final int found = modScans.found();
+            if (found == 1) {
+                customProgressBarOp(DISCOVERY_BAR_ID, MlsIpc.OP_INDETERMINATE, 0, null);
+            }
+            customProgressBarOp(DISCOVERY_BAR_ID, MlsIpc.OP_MAXIMUM, found, null);
+            updateDiscoveryTitle();
+        }
+    }
+
+    public static void beforeModScan(Object task) {
+        final MlsModScans modScans = ActualLoadingScreen.modScans;
+        if (modScans != null) {
+            modScans.begin(task);
+        }
+    }
+
+    public static void afterModScan(Object candidate, Object task) {
+        final MlsModScans modScans = ActualLoadingScreen.modScans;
+        if (modScans == null) return;
+        final String warning = modScans.end(task, candidate);
+        if (warning != null) {
+            println(warning);
+        }
+        synchronized (progress) {
+            if (ActualLoadingScreen.modScans != modScans) return;
+            customProgressBarOp(DISCOVERY_BAR_ID, MlsIpc.OP_PROGRESS, modScans.getScanned(), null);
+            updateDiscoveryTitle();
+        }
+    }
+
+    private static void updateDiscoveryTitle() {
+        customProgressBarOp(
+            DISCOVERY_BAR_ID, MlsIpc.OP_TITLE, 0,
+            "Discovering mods \u2014 scanned " + modScans.getScanned() + " of " + modScans.getFound()
+        );
+    }
+
+    public static void afterModDiscovery() {
+        synchronized (progress) {
+            if (modScans == null) return;
+            println(
+                "Scanned " + modScans.getScanned() + " mod candidates in " +
+                    MlsEntrypointTimings.formatMillis(System.nanoTime() - discoveryStart) + " ms"
+            );
+            final List<String> slowest = modScans.getSlowest();
+            if (!slowest.isEmpty()) {
+                println("Slowest mod candidates to scan:");
+                for (final String scan : slowest) {
+                    println("  " + scan);
+                }
+            }
+        }
+    }
+
+    public static void beforeModResolution() {
+        synchronized (progress) {
+            if (modScans == null) return;
+            customProgressBarOp(DISCOVERY_BAR_ID, MlsIpc.OP_TITLE, 0, "Resolving mods");
+            customProgressBarOp(DISCOVERY_BAR_ID, MlsIpc.OP_INDETERMINATE, 1, null);
+        }
+    }
+
+    public static void afterModResolution() {
+        synchronized (progress) {
+            if (modScans == null) return;
+            println(
+                "Discovered and resolved mods in " +
+                    MlsEntrypointTimings.formatMillis(System.nanoTime() - discoveryStart) + " ms"
+            );
+            customProgressBarOp(DISCOVERY_BAR_ID, MlsIpc.OP_CLOSE, 0, null);
+            modScans = null;
+        }
+    }
+
     public static void setTitleFromMetadata(String id, String name, String version) {
         if (titleSet || IGNORED_BUILTIN.contains(id)) return;
         titleSet = true;
@@ -292,168 +1171,535 @@ public class ActualLoadingScreen {
     }
 
     private static void setTitle(String title) {
-        if (sendIpc(6, title)) return;
-        if (dialog != null) {
-            dialog.setTitle(title);
+        if (sendIpc(MlsIpc.Packet.setTitle(title))) return;
+        final MlsUiModel ui = ActualLoadingScreen.ui;
+        if (ui != null) {
+            ui.title = title;
+            ui.markDirty();
         }
     }
 
-    public static void beforeEntrypointType(String name, Class<?> type) {
-        beforeEntrypointType(
-            name,
-            type.getSimpleName(),
-            FabricLoader.getInstance().getEntrypointContainers(name, type).size()
-        );
+    /**
+     * @param entrypoints The containers the loader is about to call, which are only counted
+     */
+    public static void beforeEntrypointType(Collection<?> entrypoints, String name, Class<?> type) {
+        beforeEntrypointType(name, type.getSimpleName(), entrypoints.size());
     }
 
     private static void beforeEntrypointType(String name, String type, int entrypointCount) {
-        final String fullId = "entrypoint:" + name;
-        progress.put(fullId, 0);
+        synchronized (progress) {
+            final String fullId = "entrypoint:" + name;
+            progress.put(fullId, 0);
+            if (tracer != null) {
+                tracer.record(MlsTracer.ENTRYPOINT_TYPE_BEGIN, name, type, entrypointCount);
+            }
+            if (timingHistory != null) {
+                timingHistory.beginPhase(name, System.nanoTime());
+                updateOverallProgress();
+            }
 
-        if (sendIpc(0, name, type, Integer.toString(entrypointCount))) return;
+            if (sendIpc(MlsIpc.Packet.beforeEntrypointType(name, type, entrypointCount))) return;
 
-        println("Preparing loading screen for entrypoint '" + name + "'");
-        if (dialog == null) return;
+            println("Preparing loading screen for entrypoint '" + name + "'");
+            if (ui == null) return;
 
-        final JProgressBar progressBar = new JProgressBar(0, entrypointCount);
-        progressBar.setStringPainted(true);
-        setLabel(progressBar, name, type, null);
-        progressBars.put(fullId, progressBar);
-        label.add(progressBar, BorderLayout.SOUTH, 1);
-        label.revalidate();
-        label.repaint();
+            final MlsUiModel.Bar bar = ui.addBar(fullId);
+            bar.maximum = entrypointCount;
+            setLabel(bar, name, type, null);
+        }
     }
 
     public static void beforeSingleEntrypoint(String typeName, String typeType, String modId, String modName) {
-        final String fullId = "entrypoint:" + typeName;
-        final Integer oldProgress = progress.get(fullId);
-        progress.put(fullId, oldProgress != null ? oldProgress + 1 : 1);
+        beforeSingleEntrypoint(typeName, typeType, modId, modName, 0);
+    }
+
+    private static void beforeSingleEntrypoint(String typeName, String typeType, String modId, String modName, int newProgress) {
+        synchronized (progress) {
+            final String fullId = "entrypoint:" + typeName;
+            if (newProgress <= 0) {
+                final Integer oldProgress = progress.get(fullId);
+                newProgress = oldProgress != null ? oldProgress + 1 : 1;
+            }
+            progress.put(fullId, newProgress);
+            if (entrypointTimings != null) {
+                entrypointTimings.begin(typeName, modId, modName);
+            }
+            if (tracer != null) {
+                tracer.record(MlsTracer.SINGLE_ENTRYPOINT, typeName, modName, tracer.intern(modId));
+            }
+            if (timingHistory != null) {
+                timingHistory.beginContainer(typeName, modId, System.nanoTime());
+                updateOverallProgress();
+            }
 
-        if (sendIpc(1, typeName, typeType, modId, modName)) return;
+            if (sendIpc(MlsIpc.Packet.beforeSingleEntrypoint(typeName, typeType, modId, modName, newProgress))) return;
 
-        println("Calling entrypoint container for mod '" + modId + "'");
-        if (dialog == null) return;
+            println("Calling entrypoint container for mod '" + modId + "'");
+            showSingleEntrypoint(fullId, typeName, typeType, modName, newProgress);
+        }
+    }
+
+    private static void showSingleEntrypoint(String fullId, String typeName, String typeType, String modName, int newProgress) {
+        if (ui == null) return;
+
+        final MlsUiModel.Bar bar = ui.getBar(fullId);
+        if (bar == null) return;
+        bar.value = Math.min(newProgress, bar.maximum);
+        setLabel(bar, typeName, typeType, modName);
+        ui.markDirty();
+    }
+
+    /**
+     * Counts a container that {@link #invokeEntrypointParallel} ran on a worker thread once it's finished. These
+     * aren't traced, since the tracer expects one container at a time, but their time is credited to the timing
+     * history. Like the other hooks, this holds {@link #progress}'s lock, so the workers' updates are ordered with
+     * every other thread's.
+     */
+    private static void afterParallelEntrypoint(String typeName, String typeType, String modId, String modName, long nanos) {
+        synchronized (progress) {
+            final String fullId = "entrypoint:" + typeName;
+            final Integer oldProgress = progress.get(fullId);
+            final int newProgress = oldProgress != null ? oldProgress + 1 : 1;
+            progress.put(fullId, newProgress);
+            if (entrypointTimings != null) {
+                entrypointTimings.add(typeName, modId, modName, nanos);
+            }
+            if (timingHistory != null) {
+                timingHistory.addContainer(typeName, modId, nanos);
+                updateOverallProgress();
+            }
+
+            if (sendIpc(MlsIpc.Packet.beforeSingleEntrypoint(typeName, typeType, modId, modName, newProgress))) return;
+
+            println("Finished entrypoint container for mod '" + modId + "' on " + Thread.currentThread().getName());
+            showSingleEntrypoint(fullId, typeName, typeType, modName, newProgress);
+        }
+    }
+
+    /**
+     * Invokes the entrypoints of {@code name} like the loader does, except that the containers of mods with the
+     * {@value #PARALLEL_SAFE} custom value set to {@code true} are run on a bounded {@link ForkJoinPool}, while the
+     * rest run in order on the calling thread. Exceptions are gathered in container order, like the loader does.
+     */
+    public static <T> void invokeEntrypointParallel(String name, Class<T> type, Consumer<? super T> invoker) {
+        final List<EntrypointContainer<T>> containers = FabricLoader.getInstance().getEntrypointContainers(name, type);
+        final String typeType = type.getSimpleName();
+        final Throwable[] errors = new Throwable[containers.size()];
+        final List<ForkJoinTask<?>> tasks = new ArrayList<>();
+
+        beforeEntrypointType(containers, name, type);
+        final ForkJoinPool pool = createEntrypointPool(name);
+        try {
+            for (int i = 0; i < containers.size(); i++) {
+                final EntrypointContainer<T> container = containers.get(i);
+                final ModMetadata metadata = container.getProvider().getMetadata();
+                if (!isParallelSafe(metadata)) continue;
+                final int index = i;
+                tasks.add(pool.submit(() -> {
+                    final long start = System.nanoTime();
+                    try {
+                        invoker.accept(container.getEntrypoint());
+                    } catch (Throwable t) {
+                        errors[index] = t;
+                    } finally {
+                        final long nanos = System.nanoTime() - start;
+                        afterParallelEntrypoint(name, typeType, metadata.getId(), metadata.getName(), nanos);
+                    }
+                }));
+            }
+            for (int i = 0; i < containers.size(); i++) {
+                final EntrypointContainer<T> container = containers.get(i);
+                final ModMetadata metadata = container.getProvider().getMetadata();
+                if (isParallelSafe(metadata)) continue;
+                beforeSingleEntrypoint(name, typeType, metadata.getId(), metadata.getName());
+                try {
+                    invoker.accept(container.getEntrypoint());
+                } catch (Throwable t) {
+                    errors[i] = t;
+                }
+            }
+            endSingleEntrypoint(name);
+        } finally {
+            // Even if a hook failed, wait for every worker, so none of them update the bar after it's closed
+            for (final ForkJoinTask<?> task : tasks) {
+                task.quietlyJoin();
+            }
+            pool.shutdown();
+            afterEntrypointType(name);
+        }
+
+        EntrypointException exception = null;
+        for (int i = 0; i < errors.length; i++) {
+            if (errors[i] == null) continue;
+            if (exception == null) {
+                exception = new EntrypointException(name, containers.get(i).getProvider().getMetadata().getId(), errors[i]);
+            } else {
+                exception.addSuppressed(errors[i]);
+            }
+        }
+        for (final ForkJoinTask<?> task : tasks) {
+            // A worker's own bookkeeping failed, rather than the entrypoint it ran
+            final Throwable hookError = task.getException();
+            if (hookError == null) continue;
+            if (exception != null) {
+                exception.addSuppressed(hookError);
+            } else {
+                task.join(); // Rethrows it
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+        maybeCloseAfter(name);
+    }
+
+    private static boolean isParallelSafe(ModMetadata metadata) {
+        final CustomValue value = metadata.getCustomValue(PARALLEL_SAFE);
+        return value != null && value.getType() == CustomValue.CvType.BOOLEAN && value.getAsBoolean();
+    }
 
-        final JProgressBar progressBar = progressBars.get(fullId);
-        if (progressBar == null) return;
-        progressBar.setValue(progress.get(fullId));
-        setLabel(progressBar, typeName, typeType, modName);
+    private static ForkJoinPool createEntrypointPool(String name) {
+        final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        final AtomicInteger threadIndex = new AtomicInteger();
+        return new ForkJoinPool(
+            ENTRYPOINT_PARALLELISM,
+            pool -> {
+                final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("Entrypoint Worker '" + name + "' #" + threadIndex.incrementAndGet());
+                thread.setContextClassLoader(contextClassLoader);
+                return thread;
+            },
+            null, false
+        );
+    }
+
+    /**
+     * Stops timing the last container that ran on the calling thread, so the wait for the parallel ones isn't added to
+     * it.
+     */
+    private static void endSingleEntrypoint(String typeName) {
+        if (entrypointTimings != null) {
+            entrypointTimings.end(typeName);
+        }
+        if (timingHistory != null) {
+            timingHistory.endContainer(typeName, System.nanoTime());
+        }
     }
 
     public static void afterEntrypointType(String name) {
-        final String fullId = "entrypoint:" + name;
-        progress.remove(fullId);
+        synchronized (progress) {
+            final String fullId = "entrypoint:" + name;
+            progress.remove(fullId);
+            if (entrypointTimings != null) {
+                entrypointTimings.end(name);
+            }
+            if (tracer != null) {
+                tracer.record(MlsTracer.ENTRYPOINT_TYPE_END, name, null, 0);
+            }
+            if (timingHistory != null) {
+                timingHistory.endPhase(name, System.nanoTime());
+                updateOverallProgress();
+            }
 
-        if (sendIpc(2, name)) return;
+            if (sendIpc(MlsIpc.Packet.afterEntrypointType(name))) return;
 
-        println("Finished loading screen for entrypoint '" + name + "'");
-        if (dialog == null) return;
+            println("Finished loading screen for entrypoint '" + name + "'");
+            if (ui == null) return;
 
-        final JProgressBar progressBar = progressBars.remove(fullId);
-        if (progressBar == null) return;
-        label.remove(progressBar);
-        label.revalidate();
-        label.repaint();
+            ui.removeBar(fullId);
+        }
     }
 
     public static void maybeCloseAfter(String type) {
-        if (!isOpen()) return;
-        if (
-            !FINAL_ENTRYPOINTS.contains(type) ||
-                (
-                    runningOnQuilt &&
-                    FabricLoader.getInstance()
-                        .getModContainer("quilt_base")
-                        .map(c -> {
-                            try {
-                                return VersionPredicate.parse(">=5.0.0-beta.4").test(c.getMetadata().getVersion());
-                            } catch (Exception e) {
-                                throw new AssertionError(e);
-                            }
-                        })
-                        .orElse(false) &&
-                    !FabricLoader.getInstance().getEntrypointContainers(type + "_init", Object.class).isEmpty()
-                )
-        ) return;
-        close();
+        if (entrypointsFinished) return;
+        if (!FINAL_ENTRYPOINTS.contains(type) || hasInitEntrypoints(type)) return;
+        entrypointsFinished = true;
+        for (final Runnable listener : closeListeners) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                println("Close listener " + listener + " failed", e);
+            }
+        }
+        closeListeners.clear();
+        writeEntrypointTimings();
+        saveTimingHistory();
+        if (isOpen()) {
+            close();
+        } else {
+            writeTrace();
+        }
+        SwitchPoint.invalidateAll(new SwitchPoint[] {hooksEnabled});
     }
 
-    public static void createCustomProgressBar(String id, String title, int max) {
-        final String fullId = "custom:" + id;
-        progress.put(fullId, 0);
+    /**
+     * Returns whether Quilt will call {@code <type>_init} entrypoints after {@code type}, in which case the screen
+     * should stay open for those. Both the quilt_base version check and the answer for each type are only worked out
+     * once.
+     */
+    private static boolean hasInitEntrypoints(String type) {
+        if (!runningOnQuilt) {
+            return false;
+        }
+        if (quiltHasInitEntrypoints == null) {
+            quiltHasInitEntrypoints = FabricLoader.getInstance()
+                .getModContainer("quilt_base")
+                .map(c -> {
+                    try {
+                        return VersionPredicate.parse(">=5.0.0-beta.4").test(c.getMetadata().getVersion());
+                    } catch (Exception e) {
+                        throw new AssertionError(e);
+                    }
+                })
+                .orElse(false);
+        }
+        if (!quiltHasInitEntrypoints) {
+            return false;
+        }
+        return hasInitEntrypoints.computeIfAbsent(
+            type, k -> !FabricLoader.getInstance().getEntrypointContainers(k + "_init", Object.class).isEmpty()
+        );
+    }
 
-        if (sendIpc(4, id, title, Integer.toString(max))) return;
-        if (dialog == null) return;
+    /**
+     * Runs {@code listener} once the final entrypoint has been called, which is when the loading screen closes, even if
+     * it isn't open. When installed as a mod, this is called reflectively, since this class is in the system class
+     * loader.
+     */
+    public static void addCloseListener(Runnable listener) {
+        closeListeners.add(listener);
+    }
 
-        final JProgressBar progressBar = new JProgressBar(0, max);
-        progressBar.setStringPainted(true);
-        progressBar.setString(title);
-        progressBars.put(fullId, progressBar);
-        label.add(progressBar, BorderLayout.SOUTH, 1);
-        label.revalidate();
-        label.repaint();
+    private static void writeEntrypointTimings() {
+        final MlsEntrypointTimings timings = entrypointTimings;
+        if (timings == null) return;
+        entrypointTimings = null;
+        final List<MlsEntrypointTimings.Timing> sorted = timings.getSorted();
+        if (sorted.isEmpty()) return;
+        try {
+            timings.write(runDir);
+        } catch (IOException e) {
+            println("Failed to write entrypoint timings", e);
+            return;
+        }
+        final MlsEntrypointTimings.Timing slowest = sorted.get(0);
+        println(
+            "Wrote timings of " + sorted.size() + " entrypoints to entrypoint-timings.csv and .json. The slowest was " +
+                slowest.modName + "'s '" + slowest.entrypoint + "' at " + MlsEntrypointTimings.formatMillis(slowest.nanos) + "ms"
+        );
     }
 
-    public static void customProgressBarOp(String... args) {
-        final String fullId = "custom:" + args[0];
-        switch (args[1]) {
-            case "progress":
-                progress.put(fullId, Integer.parseInt(args[2]));
-                break;
-            case "close":
-                progress.remove(fullId);
-                break;
+    /**
+     * Shows how far along the launch is by the time its entrypoints took in previous launches, and how long it should
+     * take to finish, as a custom bar below the others. There's nothing to show on the first launch.
+     */
+    private static void updateOverallProgress() {
+        final long expectedTotal = timingHistory.getExpectedTotal();
+        if (expectedTotal <= 0 || !isOpen()) return;
+        final long expectedDone = timingHistory.getExpectedDone(System.nanoTime());
+        final long permille = expectedDone * OVERALL_BAR_MAX / expectedTotal;
+        final long seconds = (expectedTotal - expectedDone + 999_999_999L) / 1_000_000_000L;
+        if (permille == lastOverallPermille && seconds == lastOverallSeconds) return;
+        final String title = seconds > 0
+            ? "Loading mods \u2014 about " + seconds + (seconds == 1 ? " second" : " seconds") + " left"
+            : "Loading mods \u2014 almost done";
+        if (!overallBarCreated) {
+            overallBarCreated = true;
+            createCustomProgressBar(OVERALL_BAR_ID, title, OVERALL_BAR_MAX);
+        } else if (seconds != lastOverallSeconds) {
+            customProgressBarOp(OVERALL_BAR_ID, MlsIpc.OP_TITLE, 0, title);
+        }
+        if (permille != lastOverallPermille) {
+            customProgressBarOp(OVERALL_BAR_ID, MlsIpc.OP_PROGRESS, (int)permille, null);
         }
+        lastOverallPermille = permille;
+        lastOverallSeconds = seconds;
+    }
 
-        if (sendIpc(5, args)) return;
-        if (dialog == null) return;
+    private static void saveTimingHistory() {
+        final MlsTimingHistory history = timingHistory;
+        if (history == null) return;
+        timingHistory = null;
+        try {
+            history.save();
+        } catch (IOException e) {
+            println("Failed to save timing history", e);
+        }
+    }
 
-        if (args[1].equals("close")) {
-            label.remove(progressBars.remove(fullId));
-            label.revalidate();
-            label.repaint();
-            return;
+    private static void writeTrace() {
+        final MlsTracer tracer = ActualLoadingScreen.tracer;
+        if (tracer == null) return;
+        ActualLoadingScreen.tracer = null;
+        tracer.record(MlsTracer.CLOSE, null, null, 0);
+        try {
+            tracer.write(runDir.resolve("trace.json"));
+            println("Wrote " + tracer.getCount() + " trace events to trace.json");
+        } catch (IOException e) {
+            println("Failed to write trace", e);
         }
+    }
 
-        final JProgressBar progressBar = progressBars.get(fullId);
-        switch (args[1]) {
-            case "progress":
-                progressBar.setValue(Integer.parseInt(args[2]));
-                break;
-            case "maximum":
-                progressBar.setMaximum(Integer.parseInt(args[2]));
+    public static void createCustomProgressBar(String id, String title, int max) {
+        createCustomProgressBar(id, title, max, 0);
+    }
+
+    private static void createCustomProgressBar(String id, String title, int max, int sharedSlot) {
+        synchronized (progress) {
+            final String fullId = "custom:" + id;
+            progress.put(fullId, 0);
+            if (tracer != null) {
+                tracer.record(MlsTracer.CUSTOM_BAR_CREATE, id, title, max);
+            }
+
+            if (ENABLE_IPC && sharedProgress != null) {
+                sharedSlot = sharedProgress.allocate();
+                if (sharedSlot > 0) {
+                    sharedProgress.write(sharedSlot, 0, 0, max);
+                    sharedSlots.put(fullId, new SharedSlot(sharedSlot));
+                } else {
+                    sharedSlot = 0;
+                }
+            }
+            if (sendIpc(MlsIpc.Packet.createCustomProgressBar(id, title, max, sharedSlot))) return;
+            if (ui == null) return;
+
+            final MlsUiModel.Bar bar = ui.addBar(fullId);
+            bar.maximum = max;
+            bar.text = title;
+            if (sharedSlot > 0) {
+                sharedSlots.put(fullId, new SharedSlot(sharedSlot));
+            }
+        }
+    }
+
+    public static void customProgressBarOp(String... args) {
+        final int op = MlsIpc.opFromName(args[1]);
+        switch (op) {
+            case MlsIpc.OP_PROGRESS:
+            case MlsIpc.OP_MAXIMUM:
+            case MlsIpc.OP_MINIMUM:
+                customProgressBarOp(args[0], op, Integer.parseInt(args[2]), null);
                 break;
-            case "minimum":
-                progressBar.setMinimum(Integer.parseInt(args[2]));
+            case MlsIpc.OP_TITLE:
+                customProgressBarOp(args[0], op, 0, args[2]);
                 break;
-            case "title":
-                progressBar.setString(args[2]);
+            case MlsIpc.OP_INDETERMINATE:
+                customProgressBarOp(args[0], op, Boolean.parseBoolean(args[2]) ? 1 : 0, null);
                 break;
-            case "indeterminate":
-                progressBar.setIndeterminate(Boolean.parseBoolean(args[2]));
+            case MlsIpc.OP_CLOSE:
+                customProgressBarOp(args[0], op, 0, null);
                 break;
+            default:
+                println("Unknown custom progress bar op '" + args[1] + "'");
+        }
+    }
+
+    private static void customProgressBarOp(String id, int op, int value, String text) {
+        synchronized (progress) {
+            final String fullId = "custom:" + id;
+            switch (op) {
+                case MlsIpc.OP_PROGRESS:
+                    progress.put(fullId, value);
+                    break;
+                case MlsIpc.OP_CLOSE:
+                    progress.remove(fullId);
+                    break;
+            }
+            if (tracer != null) {
+                tracer.record(MlsTracer.CUSTOM_BAR_OP, id, text, (long)op << 32 | value & 0xffffffffL);
+            }
+
+            if (ENABLE_IPC && sharedProgress != null) {
+                final SharedSlot slot = op == MlsIpc.OP_CLOSE ? sharedSlots.remove(fullId) : sharedSlots.get(fullId);
+                if (slot != null) {
+                    switch (op) {
+                        case MlsIpc.OP_PROGRESS:
+                            sharedProgress.writeField(slot.index, MlsSharedProgress.FIELD_VALUE, value);
+                            return;
+                        case MlsIpc.OP_MINIMUM:
+                            sharedProgress.writeField(slot.index, MlsSharedProgress.FIELD_MINIMUM, value);
+                            return;
+                        case MlsIpc.OP_MAXIMUM:
+                            sharedProgress.writeField(slot.index, MlsSharedProgress.FIELD_MAXIMUM, value);
+                            return;
+                        case MlsIpc.OP_CLOSE:
+                            sharedProgress.release(slot.index);
+                            break;
+                    }
+                }
+            }
+            if (sendIpc(MlsIpc.Packet.customProgressBarOp(id, op, value, text))) return;
+            if (ui == null) return;
+
+            if (op == MlsIpc.OP_CLOSE) {
+                sharedSlots.remove(fullId);
+                ui.removeBar(fullId);
+                return;
+            }
+
+            final MlsUiModel.Bar bar = ui.getBar(fullId);
+            if (bar == null) return;
+            switch (op) {
+                case MlsIpc.OP_PROGRESS:
+                    bar.value = value;
+                    break;
+                case MlsIpc.OP_MAXIMUM:
+                    bar.maximum = value;
+                    break;
+                case MlsIpc.OP_MINIMUM:
+                    bar.minimum = value;
+                    break;
+                case MlsIpc.OP_TITLE:
+                    bar.text = text;
+                    break;
+                case MlsIpc.OP_INDETERMINATE:
+                    bar.indeterminate = value != 0;
+                    break;
+            }
+            ui.markDirty();
         }
     }
 
     private static void close() {
-        if (memoryThread != null) {
-            memoryThread.interrupt();
+        stopMemoryThread();
+        stopClassLoadingThread();
+        if (ui != null) {
+            synchronized (progress) {
+                ui = null;
+                progress.clear();
+            }
+            SwingUtilities.invokeLater(() -> {
+                if (frameTimer != null) {
+                    frameTimer.stop();
+                    frameTimer = null;
+                }
+                if (dialog != null) {
+                    dialog.dispose();
+                    dialog = null;
+                }
+                java2dRenderer = null;
+                progressBars.clear();
+            });
+        }
+        if (ipcSender != null) {
+            ipcSender.close();
+            println(ipcSender.getStats());
+            ipcSender = null;
         }
-        sendIpc(255);
-        if (dialog != null) {
-            dialog.dispose();
-            dialog = null;
-            progress.clear();
-            progressBars.clear();
+        if (ipcSocketServer != null) {
+            println(ipcSocketServer.getStats());
+            ipcSocketServer = null;
         }
-        if (ipcOut != null) {
+        if (ipcSocketClient != null) {
             try {
-                ipcOut.close();
+                ipcSocketClient.close();
             } catch (IOException e) {
-                println("Failed to close ipcOut", e);
+                println("Failed to close IPC socket", e);
             }
-            ipcOut = null;
+            ipcSocketClient = null;
         }
+        writeTrace();
         if (logFile != null) {
             logFile.close();
             if (logFile.checkError()) {
@@ -464,41 +1710,57 @@ public class ActualLoadingScreen {
     }
 
     public static boolean isOpen() {
-        return dialog != null || ipcOut != null;
+        return ui != null || ipcSender != null;
     }
 
-    private static void updateMemoryUsage() {
-        if (IS_IPC_CLIENT || !enableMemoryDisplay) return;
+    /**
+     * Samples the memory usage, and updates the memory bar if it changed by at least a megabyte. Returns the usage.
+     */
+    private static synchronized long updateMemoryUsage() {
+        if (IS_IPC_CLIENT || !enableMemoryDisplay) return 0L;
 
         final Runtime runtime = Runtime.getRuntime();
         final long usage = runtime.totalMemory() - runtime.freeMemory();
         final long total = runtime.maxMemory();
+        memorySamples.incrementAndGet();
+
+        final long usageMb = usage >> 20;
+        final long totalMb = total >> 20;
+        if (usageMb == lastMemoryUsageMb && totalMb == lastMemoryTotalMb) return usage;
+        lastMemoryUsageMb = usageMb;
+        lastMemoryTotalMb = totalMb;
+        memoryUpdates.incrementAndGet();
+        if (tracer != null) {
+            tracer.record(MlsTracer.MEMORY, null, null, usage);
+        }
 
-        if (sendIpc(3, Long.toString(usage), Long.toString(total))) return;
+        if (ENABLE_IPC && sharedProgress != null) {
+            sharedProgress.write(MlsSharedProgress.MEMORY_SLOT, usage, 0, total);
+            return usage;
+        }
+        if (sendIpc(MlsIpc.Packet.memoryUsage(usage, total))) return usage;
 
         updateMemoryUsage0(usage, total);
+        return usage;
     }
 
     private static void updateMemoryUsage0(long usage, long total) {
-        if (memoryBar == null) return;
-
-        final double bytesPerMb = 1024L * 1024L;
-        final int usageMb = (int)Math.round(usage / bytesPerMb);
-        final int totalMb = (int)Math.round(total / bytesPerMb);
+        final MlsUiModel ui = ActualLoadingScreen.ui;
+        if (ui == null || !enableMemoryDisplay) return;
 
-        memoryBar.setMaximum(totalMb);
-        memoryBar.setValue(usageMb);
-        memoryBar.setString(usageMb + " MB / " + totalMb + " MB");
+        ui.memoryUsage = usage;
+        ui.memoryTotal = total;
+        ui.markDirty();
     }
 
-    private static void setLabel(JProgressBar progressBar, String typeName, String typeType, @Nullable String modName) {
+    private static void setLabel(MlsUiModel.Bar bar, String typeName, String typeType, @Nullable String modName) {
         final StringBuilder message = new StringBuilder("Loading '").append(typeName)
             .append("' (").append(typeType).append(") \u2014 ")
-            .append(progressBar.getValue()).append('/').append(progressBar.getMaximum());
+            .append(bar.value).append('/').append(bar.maximum);
         if (modName != null) {
             message.append(" \u2014 ").append(modName);
         }
-        progressBar.setString(message.toString());
+        bar.text = message.toString();
     }
 
     private static void println(String message) {
@@ -523,30 +1785,72 @@ public class ActualLoadingScreen {
         }
     }
 
-    private static boolean sendIpc(int id, String... args) {
+    private static boolean sendIpc(MlsIpc.Packet packet) {
         if (!ENABLE_IPC) {
             return false;
         }
-        if (ipcOut != null) {
-            try {
-                //noinspection SynchronizeOnNonFinalField
-                synchronized (ipcOut) {
-                    ipcOut.writeByte(id);
-                    ipcOut.writeByte(args.length);
-                    for (final String arg : args) {
-                        ipcOut.writeUTF(arg);
-                    }
-                    ipcOut.flush();
+        final MlsIpcSender sender = ipcSender;
+        if (sender != null) {
+            sender.send(packet);
+        }
+        return true;
+    }
+
+    /**
+     * Called when the pipe or socket to the IPC client breaks. If the user closed the loading screen window, the game is
+     * closed along with it, like it is without IPC. Otherwise, IPC is turned off and loading carries on without a
+     * loading screen.
+     */
+    static void ipcFailed(String message, IOException e) {
+        if (!ipcLost.compareAndSet(false, true)) return;
+        if (ipcWindowClosed()) {
+            println("Exiting process because the loading screen was closed");
+            System.exit(0);
+        }
+        println(message + ". Continuing without a loading screen.", e);
+        final MlsIpcSender sender = ipcSender;
+        if (sender != null) {
+            sender.fail();
+        }
+    }
+
+    private static boolean ipcWindowClosed() {
+        final Process process = ipcProcess;
+        if (process == null) {
+            return false;
+        }
+        try {
+            // The pipe or socket can break slightly before the process is reaped
+            return process.waitFor(1L, TimeUnit.SECONDS) && process.exitValue() == MlsIpc.EXIT_WINDOW_CLOSED;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return !process.isAlive() && process.exitValue() == MlsIpc.EXIT_WINDOW_CLOSED;
+        }
+    }
+
+    private static void startTelemetryThread() {
+        final Thread telemetryThread = new Thread(() -> {
+            final Runtime runtime = Runtime.getRuntime();
+            while (true) {
+                try {
+                    //noinspection BusyWait
+                    Thread.sleep(MlsIpcSocket.TELEMETRY_INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    break;
                 }
-            } catch (IOException e) {
-                if (e.getMessage().equals("The pipe is being closed")) {
-                    println("Exiting process due to IPC exit");
-                    System.exit(0);
+                final MlsIpcSocket.Client client = ipcSocketClient;
+                if (client == null || !client.isOpen()) break;
+                try {
+                    client.sendTelemetry(
+                        maxFrameNanos.getAndSet(0L), runtime.totalMemory() - runtime.freeMemory(), runtime.maxMemory()
+                    );
+                } catch (IOException e) {
+                    break;
                 }
-                println("Failed to send IPC message (id " + id + "): " + String.join("\t", args), e);
             }
-        }
-        return true;
+        }, "MlsIpcTelemetry");
+        telemetryThread.setDaemon(true);
+        telemetryThread.start();
     }
 
     // IPC client
@@ -554,37 +1858,44 @@ public class ActualLoadingScreen {
         try {
             logFile = new PrintStream("ipc-client-log.txt");
             startLoadingScreen(false);
-            final DataInputStream in = new DataInputStream(System.in);
+            final String socketPort = System.getProperty("mlsipc.socket");
+            final MlsIpc.Reader in;
+            if (socketPort != null) {
+                ipcSocketClient = new MlsIpcSocket.Client(Integer.parseInt(socketPort), System.getProperty("mlsipc.token"));
+                in = new MlsIpc.Reader(ipcSocketClient.getInput());
+                startTelemetryThread();
+            } else {
+                in = new MlsIpc.Reader(System.in);
+            }
             mainLoop:
             while (true) {
-                final int packetId = in.readByte() & 0xff;
-                final String[] packetArgs = new String[in.readByte()];
-                for (int i = 0; i < packetArgs.length; i++) {
-                    packetArgs[i] = in.readUTF();
-                }
-                switch (packetId) {
-                    case 0:
-                        beforeEntrypointType(packetArgs[0], packetArgs[1], Integer.parseInt(packetArgs[2]));
+                final MlsIpc.Packet packet = in.read();
+                switch (packet.id) {
+                    case MlsIpc.BEFORE_ENTRYPOINT_TYPE:
+                        beforeEntrypointType(packet.s0, packet.s1, (int)packet.n0);
                         break;
-                    case 1:
-                        beforeSingleEntrypoint(packetArgs[0], packetArgs[1], packetArgs[2], packetArgs[3]);
+                    case MlsIpc.BEFORE_SINGLE_ENTRYPOINT:
+                        beforeSingleEntrypoint(packet.s0, packet.s1, packet.s2, packet.s3, (int)packet.n0);
                         break;
-                    case 2:
-                        afterEntrypointType(packetArgs[0]);
+                    case MlsIpc.AFTER_ENTRYPOINT_TYPE:
+                        afterEntrypointType(packet.s0);
                         break;
-                    case 3:
-                        updateMemoryUsage0(Long.parseLong(packetArgs[0]), Long.parseLong(packetArgs[1]));
+                    case MlsIpc.MEMORY_USAGE:
+                        updateMemoryUsage0(packet.n0, packet.n1);
                         break;
-                    case 4:
-                        createCustomProgressBar(packetArgs[0], packetArgs[1], Integer.parseInt(packetArgs[2]));
+                    case MlsIpc.CREATE_CUSTOM_PROGRESS_BAR:
+                        createCustomProgressBar(packet.s0, packet.s1, (int)packet.n0, (int)packet.n1);
                         break;
-                    case 5:
-                        customProgressBarOp(packetArgs);
+                    case MlsIpc.CUSTOM_PROGRESS_BAR_OP:
+                        customProgressBarOp(packet.s0, (int)packet.n0, (int)packet.n1, packet.s1);
                         break;
-                    case 6:
-                        setTitle(packetArgs[0]);
+                    case MlsIpc.SET_TITLE:
+                        setTitle(packet.s0);
                         break;
-                    case 255:
+                    case MlsIpc.METRICS:
+                        updateMetrics0(packet.values);
+                        break;
+                    case MlsIpc.CLOSE:
                         break mainLoop;
                 }
             }
@@ -598,4 +1909,13 @@ public class ActualLoadingScreen {
         }
         close();
     }
+
+    private static final class SharedSlot {
+        final int index;
+        long lastSeq;
+
+        SharedSlot(int index) {
+            this.index = index;
+        }
+    }
 }
@@ -1,12 +1,15 @@
 package io.github.gaming32.modloadingscreen;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.Instrumentation;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
 public class EarlyLoadingAgent {
@@ -16,21 +19,47 @@ public class EarlyLoadingAgent {
 
         final Path flatlafDestPath = Paths.get(".cache/mod-loading-screen/flatlaf.jar").toAbsolutePath();
         Files.createDirectories(flatlafDestPath.getParent());
-        try (InputStream is = EarlyLoadingAgent.class.getClassLoader().getResourceAsStream(MlsConstants.FLATLAF_PATH)) {
-            if (is == null) {
-                System.err.println("[ModLoadingScreen] [ERROR] flatlaf.jar not found! Aborting.");
-                return;
+        final URL flatlafUrl = EarlyLoadingAgent.class.getClassLoader().getResource(MlsConstants.FLATLAF_PATH);
+        if (flatlafUrl == null) {
+            System.err.println("[ModLoadingScreen] [ERROR] flatlaf.jar not found! Aborting.");
+            return;
+        }
+        String flatlafKey = null;
+        final URLConnection connection = flatlafUrl.openConnection();
+        if (connection instanceof JarURLConnection) {
+            final JarEntry entry = ((JarURLConnection)connection).getJarEntry();
+            if (entry.getCrc() != -1 && entry.getSize() != -1) {
+                flatlafKey = MlsCache.zipEntryKey(entry.getCrc(), entry.getSize());
+            }
+        }
+        try {
+            if (MlsCache.extractIfChanged(flatlafDestPath, flatlafKey, flatlafUrl::openStream)) {
+                System.out.println("[ModLoadingScreen] Extracted flatlaf.jar");
+            } else {
+                System.out.println("[ModLoadingScreen] Extracted flatlaf.jar is up to date");
             }
-            Files.copy(is, flatlafDestPath, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            // On Windows, another instance sharing this game dir may have the old copy open
+            if (!Files.isRegularFile(flatlafDestPath)) throw e;
+            System.err.println("[ModLoadingScreen] [WARN] Failed to update flatlaf.jar. Using the existing copy.");
+            e.printStackTrace();
         }
-        System.out.println("[ModLoadingScreen] Extracted flatlaf.jar");
         instrumentation.appendToSystemClassLoaderSearch(new JarFile(flatlafDestPath.toFile()));
 
         ActualLoadingScreen.startLoadingScreen(false);
-        instrumentation.addTransformer(
-            (loader, className, classBeingRedefined, protectionDomain, classfileBuffer) ->
-                MlsTransformers.instrumentClass(className, classfileBuffer),
-            false
+        MlsTransformers.enableCache(flatlafDestPath.getParent());
+        final ClassFileTransformer classLoadCounter =
+            (loader, className, classBeingRedefined, protectionDomain, classfileBuffer) -> {
+                ActualLoadingScreen.CLASS_LOAD_COUNTER.increment();
+                return null;
+            };
+        instrumentation.addTransformer(classLoadCounter, false);
+        final MlsTransformers.PatchingTransformer transformer = MlsTransformers.install(
+            instrumentation, ActualLoadingScreen.runningOnQuilt, false
         );
+        ActualLoadingScreen.addCloseListener(() -> {
+            instrumentation.removeTransformer(classLoadCounter);
+            transformer.remove();
+        });
     }
 }
@@ -0,0 +1,142 @@
+package io.github.gaming32.modloadingscreen;
+
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Caches the background image decoded and scaled to the size it's shown at, so only the first launch with a given
+ * background and screen size pays for decoding it.
+ * <p>
+ * A cache file is a 16-byte header (magic, format version, width, and height) followed by the pixels as big-endian
+ * ARGB ints, row by row. It's named after the hash of the source image and the largest size the image may be shown
+ * at, which depends on the screen, and is memory-mapped to read it back.
+ */
+final class MlsBackgroundCache {
+    private static final int MAGIC = 0x4D4C5342; // MLSB
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    private MlsBackgroundCache() {
+    }
+
+    /**
+     * Loads the image at {@code source}, scaled down to fit within {@code maxWidth} by {@code maxHeight} if it's
+     * larger, using the cache in {@code cacheDir} if possible. Returns {@code null} if the image can't be decoded.
+     */
+    static BufferedImage load(URL source, Path cacheDir, int maxWidth, int maxHeight) throws IOException {
+        final byte[] data;
+        try (InputStream is = source.openStream()) {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                bytes.write(buffer, 0, n);
+            }
+            data = bytes.toByteArray();
+        }
+        final String hash = MlsCache.hex(MlsCache.sha256().digest(data)).substring(0, 16);
+        final Path cacheFile = cacheDir.resolve("background-" + hash + '-' + maxWidth + 'x' + maxHeight + ".argb");
+
+        try {
+            final BufferedImage cached = read(cacheFile);
+            if (cached != null) {
+                return cached;
+            }
+        } catch (IOException e) {
+            // Fall back to decoding it again
+        }
+
+        final BufferedImage image = decode(data, maxWidth, maxHeight);
+        if (image == null) {
+            return null;
+        }
+        try (DirectoryStream<Path> outdated = Files.newDirectoryStream(cacheDir, "background-*.argb")) {
+            for (final Path path : outdated) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException ignored) {
+            // Still mapped by another instance on Windows
+        }
+        try {
+            write(cacheFile, image);
+        } catch (IOException ignored) {
+            // The cache is only an optimization
+        }
+        return image;
+    }
+
+    private static BufferedImage read(Path cacheFile) throws IOException {
+        final MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            return null;
+        }
+        final int width = buffer.getInt(8);
+        final int height = buffer.getInt(12);
+        if (width <= 0 || height <= 0 || buffer.capacity() != HEADER_SIZE + 4L * width * height) {
+            return null;
+        }
+        final int[] pixels = new int[width * height];
+        ((ByteBuffer)buffer.position(HEADER_SIZE)).asIntBuffer().get(pixels);
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        // setDataElements, unlike writing into the DataBufferInt's array, leaves the image eligible for acceleration
+        image.getRaster().setDataElements(0, 0, width, height, pixels);
+        return image;
+    }
+
+    private static void write(Path cacheFile, BufferedImage image) throws IOException {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int[] pixels = (int[])image.getRaster().getDataElements(0, 0, width, height, null);
+        final ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 4 * pixels.length);
+        buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(width).putInt(height);
+        buffer.asIntBuffer().put(pixels);
+        MlsCache.writeAtomically(cacheFile, buffer);
+    }
+
+    private static BufferedImage decode(byte[] data, int maxWidth, int maxHeight) throws IOException {
+        Image source = ImageIO.read(new ByteArrayInputStream(data));
+        if (source == null) {
+            // ImageIO doesn't support every format the AWT toolkit does, such as XBM
+            final ImageIcon icon = new ImageIcon(data);
+            if (icon.getIconWidth() <= 0) {
+                return null;
+            }
+            source = icon.getImage();
+        }
+        final int sourceWidth = source.getWidth(null);
+        final int sourceHeight = source.getHeight(null);
+        final double scale = Math.min(1.0, Math.min((double)maxWidth / sourceWidth, (double)maxHeight / sourceHeight));
+        final int width = Math.max(1, (int)Math.round(sourceWidth * scale));
+        final int height = Math.max(1, (int)Math.round(sourceHeight * scale));
+
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.drawImage(source, 0, 0, width, height, null);
+        g.dispose();
+        return image;
+    }
+}
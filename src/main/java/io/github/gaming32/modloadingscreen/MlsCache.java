@@ -0,0 +1,179 @@
+package io.github.gaming32.modloadingscreen;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+
+/**
+ * Helpers for the files Mod Loading Screen keeps in {@code .cache/mod-loading-screen}.
+ */
+final class MlsCache {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private MlsCache() {
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-256 is required to be supported", e);
+        }
+    }
+
+    static String sha256(Path path) throws IOException {
+        final MessageDigest digest = sha256();
+        final byte[] buffer = new byte[8192];
+        try (InputStream is = Files.newInputStream(path)) {
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    /**
+     * Returns a key identifying the contents of a file inside a jar, from the CRC-32 and size in the jar's central
+     * directory when the file system exposes them, or by reading the file otherwise.
+     */
+    static String zipEntryKey(Path path) throws IOException {
+        try {
+            return zipEntryKey((Long)Files.getAttribute(path, "zip:crc"), Files.size(path));
+        } catch (UnsupportedOperationException | IllegalArgumentException | ClassCastException ignored) {
+        }
+        final CRC32 crc = new CRC32();
+        long size = 0;
+        final byte[] buffer = new byte[8192];
+        try (InputStream is = Files.newInputStream(path)) {
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                crc.update(buffer, 0, n);
+                size += n;
+            }
+        }
+        return zipEntryKey(crc.getValue(), size);
+    }
+
+    static String zipEntryKey(long crc, long size) {
+        return String.format("crc32=%08x,size=%d", crc, size);
+    }
+
+    /**
+     * Copies a file into the cache, unless the copy that's already there was made from a source with the same key.
+     * The key and the size of the copy are recorded in a {@code .key} file next to it. Both files are written to a
+     * temporary file first and then moved into place, so concurrent instances sharing a game directory never see a
+     * partial file.
+     *
+     * @param sourceKey A key identifying the contents of the source, or {@code null} to always copy
+     * @return {@code true} if the file was copied, or {@code false} if the existing copy was up to date
+     */
+    static boolean extractIfChanged(Path dest, String sourceKey, IoSupplier<InputStream> source) throws IOException {
+        final Path keyFile = dest.resolveSibling(dest.getFileName() + ".key");
+        if (sourceKey != null) {
+            try {
+                final String[] recorded = new String(Files.readAllBytes(keyFile), StandardCharsets.UTF_8).split("\n");
+                if (
+                    recorded.length == 2 && recorded[0].equals(sourceKey) &&
+                        Long.parseLong(recorded[1]) == Files.size(dest)
+                ) {
+                    return false;
+                }
+            } catch (NoSuchFileException | NumberFormatException ignored) {
+            }
+        }
+
+        final Path temp = Files.createTempFile(dest.getParent(), dest.getFileName() + ".", ".tmp");
+        try {
+            try (InputStream is = source.get()) {
+                Files.copy(is, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            final long size = Files.size(temp);
+            moveIntoPlace(temp, dest);
+            if (sourceKey != null) {
+                writeAtomically(keyFile, (sourceKey + '\n' + size).getBytes(StandardCharsets.UTF_8));
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return true;
+    }
+
+    static void writeAtomically(Path dest, byte[] data) throws IOException {
+        writeAtomically(dest, ByteBuffer.wrap(data));
+    }
+
+    static void writeAtomically(Path dest, ByteBuffer data) throws IOException {
+        final Path temp = Files.createTempFile(dest.getParent(), dest.getFileName() + ".", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            }
+            moveIntoPlace(temp, dest);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void moveIntoPlace(Path source, Path dest) throws IOException {
+        try {
+            Files.move(source, dest, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, dest, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    static void appendJsonString(StringBuilder result, String value) {
+        result.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < 0x20) {
+                result.append(String.format("\\u%04x", (int)c));
+            } else {
+                result.append(c);
+            }
+        }
+        result.append('"');
+    }
+
+    static String hex(byte[] bytes) {
+        final char[] result = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            result[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            result[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(result);
+    }
+
+    /**
+     * Returns the feature version of the running Java, such as {@code 8} or {@code 17}.
+     */
+    static int javaVersion() {
+        final String version = System.getProperty("java.specification.version");
+        try {
+            return Integer.parseInt(version.startsWith("1.") ? version.substring(2) : version);
+        } catch (NumberFormatException e) {
+            return 8;
+        }
+    }
+
+    @FunctionalInterface
+    interface IoSupplier<T> {
+        T get() throws IOException;
+    }
+}
@@ -0,0 +1,125 @@
+package io.github.gaming32.modloadingscreen;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Measures how long each mod's entrypoint containers take. A container is timed from its {@code beforeSingleEntrypoint}
+ * until the next one of the same type, or until {@code afterEntrypointType}. Containers of the same mod and entrypoint
+ * type are added together.
+ */
+final class MlsEntrypointTimings {
+    private final Map<String, Running> running = new HashMap<>();
+    private final Map<String, Timing> timings = new LinkedHashMap<>();
+
+    synchronized void begin(String typeName, String modId, String modName) {
+        final long now = System.nanoTime();
+        end(typeName, now);
+        running.put(typeName, new Running(modId, modName, now));
+    }
+
+    synchronized void end(String typeName) {
+        end(typeName, System.nanoTime());
+    }
+
+    private void end(String typeName, long now) {
+        final Running container = running.remove(typeName);
+        if (container == null) return;
+        add(typeName, container.modId, container.modName, now - container.start);
+    }
+
+    /**
+     * Adds a container that was timed separately, such as one that ran on another thread.
+     */
+    synchronized void add(String typeName, String modId, String modName, long nanos) {
+        final Timing timing = timings.computeIfAbsent(modId + '\0' + typeName, k -> new Timing(modId, modName, typeName));
+        timing.count++;
+        timing.nanos += nanos;
+    }
+
+    /**
+     * Returns the timings, slowest first.
+     */
+    synchronized List<Timing> getSorted() {
+        final List<Timing> result = new ArrayList<>(timings.values());
+        result.sort((a, b) -> Long.compare(b.nanos, a.nanos));
+        return result;
+    }
+
+    /**
+     * Writes {@code entrypoint-timings.csv} and {@code entrypoint-timings.json} to {@code dir}.
+     */
+    void write(Path dir) throws IOException {
+        final List<Timing> sorted = getSorted();
+
+        final StringBuilder csv = new StringBuilder("mod_id,mod_name,entrypoint,containers,milliseconds\n");
+        for (final Timing timing : sorted) {
+            csv.append(csvField(timing.modId)).append(',')
+                .append(csvField(timing.modName)).append(',')
+                .append(csvField(timing.entrypoint)).append(',')
+                .append(timing.count).append(',')
+                .append(formatMillis(timing.nanos)).append('\n');
+        }
+        MlsCache.writeAtomically(dir.resolve("entrypoint-timings.csv"), csv.toString().getBytes(StandardCharsets.UTF_8));
+
+        final StringBuilder json = new StringBuilder("[\n");
+        for (int i = 0; i < sorted.size(); i++) {
+            final Timing timing = sorted.get(i);
+            json.append("  {\"modId\": ");
+            MlsCache.appendJsonString(json, timing.modId);
+            json.append(", \"modName\": ");
+            MlsCache.appendJsonString(json, timing.modName);
+            json.append(", \"entrypoint\": ");
+            MlsCache.appendJsonString(json, timing.entrypoint);
+            json.append(", \"containers\": ").append(timing.count)
+                .append(", \"milliseconds\": ").append(formatMillis(timing.nanos))
+                .append(i + 1 < sorted.size() ? "},\n" : "}\n");
+        }
+        json.append("]\n");
+        MlsCache.writeAtomically(dir.resolve("entrypoint-timings.json"), json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String csvField(String value) {
+        if (value.indexOf(',') == -1 && value.indexOf('"') == -1 && value.indexOf('\n') == -1) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    static String formatMillis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+    }
+
+    static final class Timing {
+        final String modId;
+        final String modName;
+        final String entrypoint;
+        int count;
+        long nanos;
+
+        private Timing(String modId, String modName, String entrypoint) {
+            this.modId = modId;
+            this.modName = modName;
+            this.entrypoint = entrypoint;
+        }
+    }
+
+    private static final class Running {
+        final String modId;
+        final String modName;
+        final long start;
+
+        Running(String modId, String modName, long start) {
+            this.modId = modId;
+            this.modName = modName;
+            this.start = start;
+        }
+    }
+}
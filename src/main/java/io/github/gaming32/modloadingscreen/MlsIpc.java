@@ -0,0 +1,452 @@
+package io.github.gaming32.modloadingscreen;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The wire format spoken between the IPC server (the game) and the IPC client (the loading screen process).
+ * <p>
+ * Version 1 sends every packet as an id, an argument count, and that many {@link DataOutputStream#writeUTF} strings.
+ * Version 2 keeps the same packet ids, but each packet has a fixed typed layout: numbers are zigzag varints, and
+ * identifiers (entrypoint names, types, mod ids, mod names, and bar ids) go through a per-session string table, so
+ * each one is only sent once.
+ * <p>
+ * The server always starts by sending a {@link #HELLO} framed as a version 1 packet, containing the version it is
+ * going to speak. A client that sees no hello assumes version 1.
+ */
+final class MlsIpc {
+    static final int PROTOCOL_VERSION = 2;
+    static final int MIN_PROTOCOL_VERSION = 1;
+
+    static final int BEFORE_ENTRYPOINT_TYPE = 0;
+    static final int BEFORE_SINGLE_ENTRYPOINT = 1;
+    static final int AFTER_ENTRYPOINT_TYPE = 2;
+    static final int MEMORY_USAGE = 3;
+    static final int CREATE_CUSTOM_PROGRESS_BAR = 4;
+    static final int CUSTOM_PROGRESS_BAR_OP = 5;
+    static final int SET_TITLE = 6;
+    static final int METRICS = 7;
+    static final int HELLO = 254;
+    static final int CLOSE = 255;
+
+    static final int OP_PROGRESS = 0;
+    static final int OP_MAXIMUM = 1;
+    static final int OP_MINIMUM = 2;
+    static final int OP_TITLE = 3;
+    static final int OP_INDETERMINATE = 4;
+    static final int OP_CLOSE = 5;
+
+    /**
+     * The exit code of the IPC client when the user closes its window. The server only exits the game along with the
+     * client when it exits with this code.
+     */
+    static final int EXIT_WINDOW_CLOSED = 3;
+
+    private static final String[] OP_NAMES = {"progress", "maximum", "minimum", "title", "indeterminate", "close"};
+
+    private MlsIpc() {
+    }
+
+    static int opFromName(String name) {
+        for (int i = 0; i < OP_NAMES.length; i++) {
+            if (OP_NAMES[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static String opName(int op) {
+        return OP_NAMES[op];
+    }
+
+    /**
+     * A single IPC message. Which of the fields are meaningful depends on the {@link #id}; see the factory methods.
+     */
+    static final class Packet {
+        final int id;
+        final String s0, s1, s2, s3;
+        final long n0, n1;
+        final long[] values;
+
+        private Packet(int id, String s0, String s1, String s2, String s3, long n0, long n1) {
+            this(id, s0, s1, s2, s3, n0, n1, null);
+        }
+
+        private Packet(int id, String s0, String s1, String s2, String s3, long n0, long n1, long[] values) {
+            this.id = id;
+            this.s0 = s0;
+            this.s1 = s1;
+            this.s2 = s2;
+            this.s3 = s3;
+            this.n0 = n0;
+            this.n1 = n1;
+            this.values = values;
+        }
+
+        static Packet beforeEntrypointType(String name, String type, int entrypointCount) {
+            return new Packet(BEFORE_ENTRYPOINT_TYPE, name, type, null, null, entrypointCount, 0);
+        }
+
+        /**
+         * @param progress The new absolute progress of the bar, so that a dropped packet doesn't desync the count, or
+         *                 {@code 0} to just step the bar (as is the case with version 1)
+         */
+        static Packet beforeSingleEntrypoint(String typeName, String typeType, String modId, String modName, int progress) {
+            return new Packet(BEFORE_SINGLE_ENTRYPOINT, typeName, typeType, modId, modName, progress, 0);
+        }
+
+        static Packet afterEntrypointType(String name) {
+            return new Packet(AFTER_ENTRYPOINT_TYPE, name, null, null, null, 0, 0);
+        }
+
+        static Packet memoryUsage(long usage, long total) {
+            return new Packet(MEMORY_USAGE, null, null, null, null, usage, total);
+        }
+
+        /**
+         * @param sharedSlot The {@link MlsSharedProgress} slot holding the bar's value, minimum, and maximum, or
+         *                   {@code 0} if they're sent as ops
+         */
+        static Packet createCustomProgressBar(String id, String title, int max, int sharedSlot) {
+            return new Packet(CREATE_CUSTOM_PROGRESS_BAR, id, title, null, null, max, sharedSlot);
+        }
+
+        /**
+         * @param value The new value for numeric ops, or {@code 0}/{@code 1} for {@link #OP_INDETERMINATE}
+         * @param text The new title for {@link #OP_TITLE}
+         */
+        static Packet customProgressBarOp(String id, int op, long value, String text) {
+            return new Packet(CUSTOM_PROGRESS_BAR_OP, id, text, null, null, op, value);
+        }
+
+        static Packet setTitle(String title) {
+            return new Packet(SET_TITLE, title, null, null, null, 0, 0);
+        }
+
+        /**
+         * @param values A sample from {@link MlsMetrics#sample}
+         */
+        static Packet metrics(long[] values) {
+            return new Packet(METRICS, null, null, null, null, 0, 0, values);
+        }
+
+        static Packet close() {
+            return new Packet(CLOSE, null, null, null, null, 0, 0);
+        }
+
+        @Override
+        public String toString() {
+            return "Packet{id=" + id + ", s=[" + s0 + ", " + s1 + ", " + s2 + ", " + s3 + "], n=[" + n0 + ", " + n1 + "]" +
+                (values != null ? ", values=" + Arrays.toString(values) : "") + "}";
+        }
+    }
+
+    static final class Writer {
+        private final DataOutputStream out;
+        private final int version;
+        private final Map<String, Integer> strings = new HashMap<>();
+
+        Writer(OutputStream out, int version) throws IOException {
+            if (version < MIN_PROTOCOL_VERSION || version > PROTOCOL_VERSION) {
+                throw new IllegalArgumentException("Unsupported IPC protocol version " + version);
+            }
+            this.out = out instanceof DataOutputStream ? (DataOutputStream)out : new DataOutputStream(out);
+            this.version = version;
+            writeLegacy(HELLO, Integer.toString(version));
+        }
+
+        int getVersion() {
+            return version;
+        }
+
+        void write(Packet packet) throws IOException {
+            if (version < 2) {
+                writeLegacy(packet);
+                return;
+            }
+            out.writeByte(packet.id);
+            switch (packet.id) {
+                case BEFORE_ENTRYPOINT_TYPE:
+                    writeString(packet.s0);
+                    writeString(packet.s1);
+                    writeVarLong(packet.n0);
+                    break;
+                case BEFORE_SINGLE_ENTRYPOINT:
+                    writeString(packet.s0);
+                    writeString(packet.s1);
+                    writeString(packet.s2);
+                    writeString(packet.s3);
+                    writeVarLong(packet.n0);
+                    break;
+                case AFTER_ENTRYPOINT_TYPE:
+                    writeString(packet.s0);
+                    break;
+                case MEMORY_USAGE:
+                    writeVarLong(packet.n0);
+                    writeVarLong(packet.n1);
+                    break;
+                case CREATE_CUSTOM_PROGRESS_BAR:
+                    writeString(packet.s0);
+                    out.writeUTF(packet.s1);
+                    writeVarLong(packet.n0);
+                    writeVarLong(packet.n1);
+                    break;
+                case CUSTOM_PROGRESS_BAR_OP:
+                    writeString(packet.s0);
+                    out.writeByte((int)packet.n0);
+                    if (packet.n0 == OP_TITLE) {
+                        out.writeUTF(packet.s1);
+                    } else if (packet.n0 != OP_CLOSE) {
+                        writeVarLong(packet.n1);
+                    }
+                    break;
+                case SET_TITLE:
+                    out.writeUTF(packet.s0);
+                    break;
+                case METRICS:
+                    writeVarLong(packet.values.length);
+                    for (final long value : packet.values) {
+                        writeVarLong(value);
+                    }
+                    break;
+                case CLOSE:
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown packet id " + packet.id);
+            }
+        }
+
+        private void writeLegacy(Packet packet) throws IOException {
+            switch (packet.id) {
+                case BEFORE_ENTRYPOINT_TYPE:
+                    writeLegacy(packet.id, packet.s0, packet.s1, Long.toString(packet.n0));
+                    break;
+                case BEFORE_SINGLE_ENTRYPOINT:
+                    writeLegacy(packet.id, packet.s0, packet.s1, packet.s2, packet.s3);
+                    break;
+                case AFTER_ENTRYPOINT_TYPE:
+                case SET_TITLE:
+                    writeLegacy(packet.id, packet.s0);
+                    break;
+                case MEMORY_USAGE:
+                    writeLegacy(packet.id, Long.toString(packet.n0), Long.toString(packet.n1));
+                    break;
+                case CREATE_CUSTOM_PROGRESS_BAR:
+                    writeLegacy(packet.id, packet.s0, packet.s1, Long.toString(packet.n0));
+                    break;
+                case CUSTOM_PROGRESS_BAR_OP: {
+                    final int op = (int)packet.n0;
+                    if (op == OP_CLOSE) {
+                        writeLegacy(packet.id, packet.s0, opName(op));
+                    } else if (op == OP_TITLE) {
+                        writeLegacy(packet.id, packet.s0, opName(op), packet.s1);
+                    } else if (op == OP_INDETERMINATE) {
+                        writeLegacy(packet.id, packet.s0, opName(op), Boolean.toString(packet.n1 != 0));
+                    } else {
+                        writeLegacy(packet.id, packet.s0, opName(op), Long.toString(packet.n1));
+                    }
+                    break;
+                }
+                case METRICS: {
+                    final String[] args = new String[packet.values.length];
+                    for (int i = 0; i < args.length; i++) {
+                        args[i] = Long.toString(packet.values[i]);
+                    }
+                    writeLegacy(packet.id, args);
+                    break;
+                }
+                default:
+                    writeLegacy(packet.id);
+            }
+        }
+
+        private void writeLegacy(int id, String... args) throws IOException {
+            out.writeByte(id);
+            out.writeByte(args.length);
+            for (final String arg : args) {
+                out.writeUTF(arg);
+            }
+        }
+
+        private void writeString(String s) throws IOException {
+            final Integer index = strings.get(s);
+            if (index != null) {
+                writeVarLong(index + 1);
+                return;
+            }
+            strings.put(s, strings.size());
+            out.writeByte(0);
+            out.writeUTF(s);
+        }
+
+        private void writeVarLong(long value) throws IOException {
+            long zigzag = (value << 1) ^ (value >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                out.writeByte((int)(zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            out.writeByte((int)zigzag);
+        }
+
+        void flush() throws IOException {
+            out.flush();
+        }
+
+        void close() throws IOException {
+            out.close();
+        }
+    }
+
+    static final class Reader {
+        private final DataInputStream in;
+        private int version = 1;
+        private final List<String> strings = new ArrayList<>();
+
+        Reader(InputStream in) {
+            this.in = in instanceof DataInputStream ? (DataInputStream)in : new DataInputStream(in);
+        }
+
+        int getVersion() {
+            return version;
+        }
+
+        Packet read() throws IOException {
+            while (true) {
+                final int id = in.readByte() & 0xff;
+                if (version < 2) {
+                    final String[] args = new String[in.readByte()];
+                    for (int i = 0; i < args.length; i++) {
+                        args[i] = in.readUTF();
+                    }
+                    if (id == HELLO) {
+                        final int newVersion = Integer.parseInt(args[0]);
+                        if (newVersion < MIN_PROTOCOL_VERSION || newVersion > PROTOCOL_VERSION) {
+                            throw new IOException("Unsupported IPC protocol version " + newVersion);
+                        }
+                        version = newVersion;
+                        continue;
+                    }
+                    final Packet packet = fromLegacy(id, args);
+                    if (packet != null) {
+                        return packet;
+                    }
+                    continue;
+                }
+                switch (id) {
+                    case BEFORE_ENTRYPOINT_TYPE:
+                        return Packet.beforeEntrypointType(readString(), readString(), (int)readVarLong());
+                    case BEFORE_SINGLE_ENTRYPOINT:
+                        return Packet.beforeSingleEntrypoint(
+                            readString(), readString(), readString(), readString(), (int)readVarLong()
+                        );
+                    case AFTER_ENTRYPOINT_TYPE:
+                        return Packet.afterEntrypointType(readString());
+                    case MEMORY_USAGE:
+                        return Packet.memoryUsage(readVarLong(), readVarLong());
+                    case CREATE_CUSTOM_PROGRESS_BAR:
+                        return Packet.createCustomProgressBar(
+                            readString(), in.readUTF(), (int)readVarLong(), (int)readVarLong()
+                        );
+                    case CUSTOM_PROGRESS_BAR_OP: {
+                        final String barId = readString();
+                        final int op = in.readByte() & 0xff;
+                        if (op == OP_TITLE) {
+                            return Packet.customProgressBarOp(barId, op, 0, in.readUTF());
+                        }
+                        return Packet.customProgressBarOp(barId, op, op == OP_CLOSE ? 0 : readVarLong(), null);
+                    }
+                    case SET_TITLE:
+                        return Packet.setTitle(in.readUTF());
+                    case METRICS: {
+                        final long[] values = new long[(int)readVarLong()];
+                        for (int i = 0; i < values.length; i++) {
+                            values[i] = readVarLong();
+                        }
+                        return Packet.metrics(values);
+                    }
+                    case CLOSE:
+                        return Packet.close();
+                    default:
+                        throw new IOException("Unknown packet id " + id + " in IPC protocol version " + version);
+                }
+            }
+        }
+
+        private static Packet fromLegacy(int id, String[] args) {
+            switch (id) {
+                case BEFORE_ENTRYPOINT_TYPE:
+                    return Packet.beforeEntrypointType(args[0], args[1], Integer.parseInt(args[2]));
+                case BEFORE_SINGLE_ENTRYPOINT:
+                    return Packet.beforeSingleEntrypoint(args[0], args[1], args[2], args[3], 0);
+                case AFTER_ENTRYPOINT_TYPE:
+                    return Packet.afterEntrypointType(args[0]);
+                case MEMORY_USAGE:
+                    return Packet.memoryUsage(Long.parseLong(args[0]), Long.parseLong(args[1]));
+                case CREATE_CUSTOM_PROGRESS_BAR:
+                    return Packet.createCustomProgressBar(args[0], args[1], Integer.parseInt(args[2]), 0);
+                case CUSTOM_PROGRESS_BAR_OP: {
+                    final int op = opFromName(args[1]);
+                    switch (op) {
+                        case OP_PROGRESS:
+                        case OP_MAXIMUM:
+                        case OP_MINIMUM:
+                            return Packet.customProgressBarOp(args[0], op, Integer.parseInt(args[2]), null);
+                        case OP_TITLE:
+                            return Packet.customProgressBarOp(args[0], op, 0, args[2]);
+                        case OP_INDETERMINATE:
+                            return Packet.customProgressBarOp(args[0], op, Boolean.parseBoolean(args[2]) ? 1 : 0, null);
+                        case OP_CLOSE:
+                            return Packet.customProgressBarOp(args[0], op, 0, null);
+                    }
+                    return null;
+                }
+                case SET_TITLE:
+                    return Packet.setTitle(args[0]);
+                case METRICS: {
+                    final long[] values = new long[args.length];
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = Long.parseLong(args[i]);
+                    }
+                    return Packet.metrics(values);
+                }
+                case CLOSE:
+                    return Packet.close();
+            }
+            return null;
+        }
+
+        private String readString() throws IOException {
+            final int ref = (int)readVarLong();
+            if (ref != 0) {
+                return strings.get(ref - 1);
+            }
+            final String s = in.readUTF();
+            strings.add(s);
+            return s;
+        }
+
+        private long readVarLong() throws IOException {
+            long zigzag = 0;
+            int shift = 0;
+            int b;
+            do {
+                if (shift >= 64) {
+                    throw new IOException("Malformed varint");
+                }
+                b = in.readByte() & 0xff;
+                zigzag |= (long)(b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package io.github.gaming32.modloadingscreen;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Owns the IPC {@link MlsIpc.Writer} and writes to it from a dedicated thread, so that the threads reporting progress
+ * never block on the pipe.
+ * <p>
+ * Packets go through a lock-free queue. Packets that only carry a newer value of something (memory usage, metrics,
+ * and progress) are coalesced instead: the latest value is kept in a per-bar slot, and only a marker goes in the queue, so
+ * at most one value per bar is written each tick, however fast it's updated. Structural packets (creating, updating,
+ * and closing bars, titles, and the final close) first move any pending value for their bar into the queue, so per-bar
+ * ordering is kept.
+ * <p>
+ * Entrypoint progress is only coalesced on protocol version 2 and newer. Version 1 doesn't carry the absolute progress,
+ * so the client counts one step per message, and every message has to be sent.
+ * <p>
+ * Once {@link #QUEUE_CAPACITY} packets are waiting, new values are dropped, while structural packets are always queued.
+ * <p>
+ * The transport can hold the sender back by returning {@code false} from {@code canSend}, in which case the queue isn't
+ * drained until it's ready again, except to send the final close.
+ * <p>
+ * Once a write fails, the sender thread stops and everything still queued is dropped, as are later packets.
+ */
+final class MlsIpcSender {
+    static final int QUEUE_CAPACITY = 4096;
+    private static final long BLOCKED_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final MlsIpc.Writer out;
+    private final long flushIntervalNanos;
+    private final BooleanSupplier canSend;
+    private final ConcurrentLinkedQueue<Object> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queueSize = new AtomicInteger();
+    private final Map<String, MlsIpc.Packet> memorySlot = new ConcurrentHashMap<>(1);
+    private final Map<String, MlsIpc.Packet> metricsSlot = new ConcurrentHashMap<>(1);
+    private final Map<String, MlsIpc.Packet> entrypointSlots;
+    private final Map<String, MlsIpc.Packet> customSlots = new ConcurrentHashMap<>();
+    private final AtomicLong coalescedPackets = new AtomicLong();
+    private final AtomicLong droppedSamplePackets = new AtomicLong();
+    private final AtomicLong droppedProgressPackets = new AtomicLong();
+    private final Thread thread;
+    private volatile boolean closed;
+    private volatile boolean failed;
+
+    // Only touched by the sender thread until it has been joined
+    private long packetsSent;
+    private long flushes;
+    private long writeNanos;
+
+    MlsIpcSender(MlsIpc.Writer out, int flushIntervalMillis, BooleanSupplier canSend) {
+        this.out = out;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(flushIntervalMillis, 0));
+        this.canSend = canSend;
+        entrypointSlots = out.getVersion() >= 2 ? new ConcurrentHashMap<>() : null;
+        thread = new Thread(this::run, "MlsIpcSender");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns the slots that hold the latest value of this kind of packet, or {@code null} if it's structural.
+     */
+    private Map<String, MlsIpc.Packet> valueSlots(MlsIpc.Packet packet) {
+        switch (packet.id) {
+            case MlsIpc.MEMORY_USAGE:
+                return memorySlot;
+            case MlsIpc.METRICS:
+                return metricsSlot;
+            case MlsIpc.BEFORE_SINGLE_ENTRYPOINT:
+                return entrypointSlots;
+            case MlsIpc.CUSTOM_PROGRESS_BAR_OP:
+                return packet.n0 == MlsIpc.OP_PROGRESS ? customSlots : null;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the slots of the bar this structural packet affects, or {@code null} if it doesn't affect a bar.
+     */
+    private Map<String, MlsIpc.Packet> barSlots(MlsIpc.Packet packet) {
+        switch (packet.id) {
+            case MlsIpc.BEFORE_ENTRYPOINT_TYPE:
+            case MlsIpc.AFTER_ENTRYPOINT_TYPE:
+                // null on version 1, where they aren't coalesced
+                return entrypointSlots;
+            case MlsIpc.CREATE_CUSTOM_PROGRESS_BAR:
+            case MlsIpc.CUSTOM_PROGRESS_BAR_OP:
+                return customSlots;
+        }
+        return null;
+    }
+
+    /**
+     * Queues a packet without blocking. Returns {@code false} if the packet was dropped.
+     */
+    boolean send(MlsIpc.Packet packet) {
+        if (closed) {
+            return false;
+        }
+
+        final Map<String, MlsIpc.Packet> slots = valueSlots(packet);
+        if (slots != null) {
+            final String key = packet.s0 != null ? packet.s0 : "";
+            if (slots.put(key, packet) != null) {
+                // There's already a marker in the queue, which will pick up this value
+                coalescedPackets.incrementAndGet();
+                return true;
+            }
+            if (queueSize.get() >= QUEUE_CAPACITY) {
+                slots.remove(key);
+                (packet.s0 == null ? droppedSamplePackets : droppedProgressPackets).incrementAndGet();
+                return false;
+            }
+            enqueue(new SlotMarker(slots, key));
+            return true;
+        }
+
+        final Map<String, MlsIpc.Packet> bar = barSlots(packet);
+        if (bar != null) {
+            final MlsIpc.Packet pending = bar.remove(packet.s0);
+            final boolean closesBar = packet.id == MlsIpc.AFTER_ENTRYPOINT_TYPE ||
+                packet.id == MlsIpc.CUSTOM_PROGRESS_BAR_OP && packet.n0 == MlsIpc.OP_CLOSE;
+            if (pending != null && !closesBar) {
+                enqueue(pending);
+            }
+        }
+        enqueue(packet);
+        return true;
+    }
+
+    private void enqueue(Object entry) {
+        final int size = queueSize.incrementAndGet();
+        queue.offer(entry);
+        if (flushIntervalNanos == 0 || size == QUEUE_CAPACITY / 2) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Queues the close packet and waits a short while for the sender thread to write it and close the pipe.
+     */
+    void close() {
+        if (closed) return;
+        queueSize.incrementAndGet();
+        queue.offer(MlsIpc.Packet.close());
+        closed = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(500L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops the sender thread and drops everything waiting to be sent, once the pipe or socket has broken.
+     */
+    void fail() {
+        failed = true;
+        closed = true;
+        queue.clear();
+        queueSize.set(0);
+        memorySlot.clear();
+        metricsSlot.clear();
+        if (entrypointSlots != null) {
+            entrypointSlots.clear();
+        }
+        customSlots.clear();
+        LockSupport.unpark(thread);
+    }
+
+    String getStats() {
+        return "Sent " + packetsSent + " IPC messages in " + flushes + " flushes, spending " +
+            writeNanos / 1_000_000L + "ms writing them. Coalesced " + coalescedPackets.get() + " and dropped " +
+            droppedSamplePackets.get() + " memory and metrics and " + droppedProgressPackets.get() + " progress messages.";
+    }
+
+    private void run() {
+        long lastFlush = System.nanoTime();
+        boolean dirty = false;
+        while (true) {
+            if (failed) {
+                closeAfterFailure();
+                return;
+            }
+            if (!closed && !canSend.getAsBoolean()) {
+                LockSupport.parkNanos(this, BLOCKED_RETRY_NANOS);
+                continue;
+            }
+
+            Object entry;
+            while ((entry = queue.poll()) != null) {
+                queueSize.decrementAndGet();
+                final MlsIpc.Packet packet;
+                if (entry instanceof SlotMarker) {
+                    final SlotMarker marker = (SlotMarker)entry;
+                    packet = marker.slots.remove(marker.key);
+                    if (packet == null) continue; // Moved ahead of a structural packet
+                } else {
+                    packet = (MlsIpc.Packet)entry;
+                }
+                final long start = System.nanoTime();
+                try {
+                    out.write(packet);
+                    packetsSent++;
+                    dirty = true;
+                    if (packet.id == MlsIpc.CLOSE) {
+                        flushes++;
+                        out.close();
+                        writeNanos += System.nanoTime() - start;
+                        return;
+                    }
+                } catch (IOException e) {
+                    ActualLoadingScreen.ipcFailed("Failed to send IPC message: " + packet, e);
+                    closeAfterFailure();
+                    return;
+                }
+                writeNanos += System.nanoTime() - start;
+            }
+
+            final long now = System.nanoTime();
+            if (dirty && now - lastFlush >= flushIntervalNanos) {
+                try {
+                    out.flush();
+                } catch (IOException e) {
+                    ActualLoadingScreen.ipcFailed("Failed to flush IPC messages", e);
+                    closeAfterFailure();
+                    return;
+                }
+                writeNanos += System.nanoTime() - now;
+                flushes++;
+                lastFlush = now;
+                dirty = false;
+            }
+
+            if (flushIntervalNanos == 0) {
+                LockSupport.park(this);
+            } else {
+                LockSupport.parkNanos(this, dirty ? flushIntervalNanos - (now - lastFlush) : flushIntervalNanos);
+            }
+        }
+    }
+
+    private void closeAfterFailure() {
+        fail();
+        try {
+            out.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static final class SlotMarker {
+        final Map<String, MlsIpc.Packet> slots;
+        final String key;
+
+        SlotMarker(Map<String, MlsIpc.Packet> slots, String key) {
+            this.slots = slots;
+            this.key = key;
+        }
+    }
+}
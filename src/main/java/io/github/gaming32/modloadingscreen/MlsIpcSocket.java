@@ -0,0 +1,376 @@
+package io.github.gaming32.modloadingscreen;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A two-way IPC transport over a loopback socket, as an alternative to the IPC client's stdin.
+ * <p>
+ * The server sends the same {@link MlsIpc} stream as it would over the pipe, but cut into frames: each flush becomes
+ * one frame of an 8-byte header (payload length and sequence number) and the payload. The client acknowledges each
+ * frame once it has processed all of it, and periodically reports its frame time and heap usage. The server uses the
+ * acknowledgements for flow control: once {@link #MAX_FRAMES_IN_FLIGHT} frames are unacknowledged, the
+ * {@link MlsIpcSender} stops draining its queue, so updates keep being coalesced instead of piling up in the socket.
+ * <p>
+ * The first thing the client sends is the random token the server passed it on the command line, so that other
+ * processes can't connect in its place.
+ * <p>
+ * If the client hasn't connected within {@link #CONNECT_TIMEOUT_MILLIS}, or exits before it does, the server reports
+ * the IPC as failed.
+ */
+final class MlsIpcSocket {
+    static final int MAX_FRAMES_IN_FLIGHT = 8;
+    static final long TELEMETRY_INTERVAL_MILLIS = 250L;
+    static final int CONNECT_TIMEOUT_MILLIS = 30_000;
+
+    private static final int ACCEPT_POLL_MILLIS = 250;
+
+    private static final int TOKEN_SIZE = 16;
+    private static final int FRAME_HEADER_SIZE = 8;
+    private static final int MESSAGE_SIZE = 25;
+    private static final byte MESSAGE_ACK = 1;
+    private static final byte MESSAGE_TELEMETRY = 2;
+
+    private MlsIpcSocket() {
+    }
+
+    static String newToken() {
+        final byte[] token = new byte[TOKEN_SIZE];
+        new SecureRandom().nextBytes(token);
+        return MlsCache.hex(token);
+    }
+
+    private static byte[] parseToken(String token) {
+        final byte[] result = new byte[TOKEN_SIZE];
+        for (int i = 0; i < TOKEN_SIZE; i++) {
+            result[i] = (byte)Integer.parseInt(token.substring(i * 2, i * 2 + 2), 16);
+        }
+        return result;
+    }
+
+    private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    private static void writeFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    static final class Server {
+        private final ServerSocketChannel serverChannel;
+        private final byte[] token;
+        private final FrameOutputStream output = new FrameOutputStream();
+        private final long[] frameSendTimes = new long[MAX_FRAMES_IN_FLIGHT];
+        private volatile SocketChannel channel;
+        private volatile Process clientProcess;
+        private volatile int sentFrames;
+        private volatile int ackedFrames;
+        private volatile boolean closed;
+
+        // Only touched by the reader thread
+        private long maxAckLagNanos;
+        private long totalAckLagNanos;
+        private long telemetryReports;
+        private long maxClientFrameNanos;
+        private long totalClientFrameNanos;
+        private long maxClientHeap;
+        private long clientHeapLimit;
+
+        Server(String token) throws IOException {
+            this.token = parseToken(token);
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1);
+            final Thread thread = new Thread(this::run, "MlsIpcSocket");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * Lets the server give up waiting for the client to connect as soon as it exits.
+         */
+        void setClientProcess(Process process) {
+            clientProcess = process;
+        }
+
+        int getPort() {
+            return serverChannel.socket().getLocalPort();
+        }
+
+        /**
+         * The stream to give the {@link MlsIpc.Writer}. It buffers everything written until it's flushed, and each
+         * flush is sent as one frame.
+         */
+        OutputStream getOutput() {
+            return output;
+        }
+
+        /**
+         * Returns whether the client is connected and keeping up. Frames written while this is {@code false} are
+         * still sent, but the sender should avoid writing them.
+         */
+        boolean canSend() {
+            return channel != null && sentFrames - ackedFrames < MAX_FRAMES_IN_FLIGHT;
+        }
+
+        String getStats() {
+            if (telemetryReports == 0) {
+                return "Sent " + sentFrames + " IPC frames. The IPC client didn't report any telemetry.";
+            }
+            final double nanosPerMs = TimeUnit.MILLISECONDS.toNanos(1);
+            return String.format(
+                "Sent %d IPC frames, acknowledged after %.1fms on average and %.1fms at most. " +
+                    "The IPC client took %.1fms per frame on average and %.1fms at most, and used up to %d MB of %d MB heap.",
+                sentFrames,
+                totalAckLagNanos / Math.max(ackedFrames, 1) / nanosPerMs, maxAckLagNanos / nanosPerMs,
+                totalClientFrameNanos / telemetryReports / nanosPerMs, maxClientFrameNanos / nanosPerMs,
+                maxClientHeap / (1024L * 1024L), clientHeapLimit / (1024L * 1024L)
+            );
+        }
+
+        private void run() {
+            final ByteBuffer message = ByteBuffer.allocateDirect(MESSAGE_SIZE);
+            SocketChannel client;
+            try {
+                final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CONNECT_TIMEOUT_MILLIS);
+                while (true) {
+                    client = accept(deadline);
+                    message.clear().limit(TOKEN_SIZE);
+                    readFully(client, message);
+                    final byte[] received = new byte[TOKEN_SIZE];
+                    ((ByteBuffer)message.flip()).get(received);
+                    if (Arrays.equals(received, token)) break;
+                    client.close();
+                }
+                serverChannel.close();
+                client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel = client;
+            } catch (IOException e) {
+                if (!closed) {
+                    ActualLoadingScreen.ipcFailed("Failed to accept IPC client connection", e);
+                }
+                return;
+            }
+
+            try {
+                while (true) {
+                    message.clear();
+                    readFully(client, message);
+                    message.flip();
+                    switch (message.get()) {
+                        case MESSAGE_ACK: {
+                            final int frame = (int)message.getLong();
+                            final long lag = System.nanoTime() - frameSendTimes[frame % MAX_FRAMES_IN_FLIGHT];
+                            maxAckLagNanos = Math.max(maxAckLagNanos, lag);
+                            totalAckLagNanos += lag;
+                            ackedFrames = frame + 1;
+                            break;
+                        }
+                        case MESSAGE_TELEMETRY: {
+                            final long frameNanos = message.getLong();
+                            totalClientFrameNanos += frameNanos;
+                            maxClientFrameNanos = Math.max(maxClientFrameNanos, frameNanos);
+                            maxClientHeap = Math.max(maxClientHeap, message.getLong());
+                            clientHeapLimit = message.getLong();
+                            telemetryReports++;
+                            break;
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                if (!closed) {
+                    ActualLoadingScreen.ipcFailed("Lost connection to IPC client", e);
+                }
+            }
+        }
+
+        /**
+         * Waits for a connection until {@code deadline}, checking every {@link #ACCEPT_POLL_MILLIS} whether the
+         * client is still running.
+         */
+        private SocketChannel accept(long deadline) throws IOException {
+            final ServerSocket socket = serverChannel.socket();
+            while (true) {
+                final long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    throw new SocketTimeoutException(
+                        "IPC client didn't connect within " + CONNECT_TIMEOUT_MILLIS + "ms"
+                    );
+                }
+                socket.setSoTimeout((int)Math.min(remaining, ACCEPT_POLL_MILLIS));
+                try {
+                    // Unlike ServerSocketChannel.accept, the adaptor honors the timeout
+                    return socket.accept().getChannel();
+                } catch (SocketTimeoutException e) {
+                    final Process process = clientProcess;
+                    if (process != null && !process.isAlive()) {
+                        throw new EOFException("IPC client exited before connecting");
+                    }
+                }
+            }
+        }
+
+        private final class FrameOutputStream extends OutputStream {
+            private ByteBuffer frame = (ByteBuffer)ByteBuffer.allocateDirect(8192).position(FRAME_HEADER_SIZE);
+
+            private void ensureRemaining(int count) {
+                if (frame.remaining() >= count) return;
+                final ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(frame.capacity() * 2, frame.position() + count));
+                frame.flip();
+                grown.put(frame);
+                frame = grown;
+            }
+
+            @Override
+            public void write(int b) {
+                ensureRemaining(1);
+                frame.put((byte)b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                ensureRemaining(len);
+                frame.put(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                final SocketChannel channel = Server.this.channel;
+                if (channel == null || frame.position() == FRAME_HEADER_SIZE) return;
+                final int sequence = sentFrames;
+                frame.putInt(0, frame.position() - FRAME_HEADER_SIZE);
+                frame.putInt(4, sequence);
+                frame.flip();
+                frameSendTimes[sequence % MAX_FRAMES_IN_FLIGHT] = System.nanoTime();
+                writeFully(channel, frame);
+                frame.clear().position(FRAME_HEADER_SIZE);
+                sentFrames = sequence + 1;
+            }
+
+            @Override
+            public void close() throws IOException {
+                closed = true;
+                try {
+                    flush();
+                } finally {
+                    serverChannel.close();
+                    final SocketChannel channel = Server.this.channel;
+                    if (channel != null) {
+                        channel.close();
+                    }
+                }
+            }
+        }
+    }
+
+    static final class Client {
+        private final SocketChannel channel;
+        private final ByteBuffer message = ByteBuffer.allocateDirect(MESSAGE_SIZE);
+        private final FrameInputStream input = new FrameInputStream();
+
+        Client(int port, String token) throws IOException {
+            channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            writeFully(channel, ByteBuffer.wrap(parseToken(token)));
+        }
+
+        /**
+         * The stream to give the {@link MlsIpc.Reader}. Each frame is acknowledged when the reader asks for more
+         * data after consuming all of it.
+         */
+        InputStream getInput() {
+            return input;
+        }
+
+        void sendTelemetry(long frameNanos, long heapUsage, long heapLimit) throws IOException {
+            synchronized (message) {
+                message.clear();
+                message.put(MESSAGE_TELEMETRY).putLong(frameNanos).putLong(heapUsage).putLong(heapLimit);
+                message.flip();
+                writeFully(channel, message);
+            }
+        }
+
+        private void sendAck(int frame) throws IOException {
+            synchronized (message) {
+                message.clear();
+                message.put(MESSAGE_ACK).putLong(frame).putLong(0L).putLong(0L);
+                message.flip();
+                writeFully(channel, message);
+            }
+        }
+
+        boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        void close() throws IOException {
+            channel.close();
+        }
+
+        private final class FrameInputStream extends InputStream {
+            private final ByteBuffer header = ByteBuffer.allocateDirect(FRAME_HEADER_SIZE);
+            private ByteBuffer frame = (ByteBuffer)ByteBuffer.allocateDirect(8192).limit(0);
+            private int sequence = -1;
+
+            private boolean fill() throws IOException {
+                if (frame.hasRemaining()) return true;
+                if (sequence >= 0) {
+                    sendAck(sequence);
+                }
+                header.clear();
+                try {
+                    readFully(channel, header);
+                } catch (EOFException e) {
+                    return false;
+                }
+                final int length = header.getInt(0);
+                sequence = header.getInt(4);
+                if (length > frame.capacity()) {
+                    frame = ByteBuffer.allocateDirect(Math.max(length, frame.capacity() * 2));
+                }
+                frame.clear().limit(length);
+                readFully(channel, frame);
+                frame.flip();
+                return true;
+            }
+
+            @Override
+            public int read() throws IOException {
+                return fill() ? frame.get() & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) return 0;
+                if (!fill()) return -1;
+                len = Math.min(len, frame.remaining());
+                frame.get(b, off, len);
+                return len;
+            }
+
+            @Override
+            public int available() {
+                return frame.remaining();
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package io.github.gaming32.modloadingscreen;
+
+import javax.swing.JComponent;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Paints the whole loading screen (background, memory bar, and progress bars) straight from the {@link MlsUiModel} in
+ * one pass. It's used instead of the FlatLaf-styled {@code JProgressBar}s when {@code renderer=java2d}, so the look and
+ * feel never has to be initialized, and there's no component tree to lay out when bars come and go.
+ */
+final class MlsJava2dRenderer extends JComponent {
+    private static final long serialVersionUID = 1L;
+
+    static final int BAR_HEIGHT = 26;
+
+    private static final int DEFAULT_WIDTH = 960;
+    private static final int DEFAULT_HEIGHT = 540;
+    private static final long INDETERMINATE_PERIOD_NANOS = 1_500_000_000L;
+    private static final Color BACKGROUND = new Color(0x3c3f41);
+    private static final Color TRACK = new Color(0x555555);
+    private static final Color FILL = new Color(0x4b6eaf);
+    private static final Color TEXT = Color.WHITE;
+
+    private final MlsUiModel ui;
+    private final boolean showMemory;
+    private final boolean showMetrics;
+    private final AtomicLong maxFrameNanos;
+    private final Font font = new Font(Font.DIALOG, Font.PLAIN, 18);
+    private Image background;
+
+    MlsJava2dRenderer(MlsUiModel ui, boolean showMemory, boolean showMetrics, AtomicLong maxFrameNanos) {
+        this.ui = ui;
+        this.showMemory = showMemory;
+        this.showMetrics = showMetrics;
+        this.maxFrameNanos = maxFrameNanos;
+        setOpaque(true);
+    }
+
+    void setBackgroundImage(Image background) {
+        this.background = background;
+        repaint();
+    }
+
+    /**
+     * Returns whether there's an indeterminate bar, which needs repainting every frame even if nothing changed.
+     */
+    boolean isAnimating() {
+        for (final MlsUiModel.Bar bar : ui.getBars()) {
+            if (bar.indeterminate) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        final Image background = this.background;
+        final int width = background != null ? background.getWidth(null) : -1;
+        final int height = background != null ? background.getHeight(null) : -1;
+        return new Dimension(
+            width > 0 ? width : DEFAULT_WIDTH,
+            (height > 0 ? height : DEFAULT_HEIGHT) + (showMemory ? BAR_HEIGHT : 0) + (showMetrics ? BAR_HEIGHT : 0)
+        );
+    }
+
+    @Override
+    protected void paintComponent(Graphics graphics) {
+        final long start = System.nanoTime();
+        final Graphics2D g = (Graphics2D)graphics;
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setFont(font);
+        final FontMetrics metrics = g.getFontMetrics();
+        final int width = getWidth();
+        final int height = getHeight();
+        final int top = showMemory ? BAR_HEIGHT : 0;
+
+        g.setColor(BACKGROUND);
+        g.fillRect(0, 0, width, height);
+        if (background != null) {
+            g.drawImage(background, 0, top, this);
+        }
+
+        if (showMemory) {
+            final long bytesPerMb = 1024L * 1024L;
+            final long usageMb = Math.round((double)ui.memoryUsage / bytesPerMb);
+            final long totalMb = Math.round((double)ui.memoryTotal / bytesPerMb);
+            paintBar(g, metrics, 0, width, usageMb, 0, totalMb, false, usageMb + " MB / " + totalMb + " MB", start);
+        }
+
+        int y = height;
+        if (showMetrics) {
+            y -= BAR_HEIGHT;
+            g.setColor(BACKGROUND);
+            g.fillRect(0, y, width, BAR_HEIGHT);
+            paintText(g, metrics, y, width, ui.metricsText);
+        }
+
+        // Like the Swing renderer, the newest bar is at the top and the oldest at the bottom
+        final List<MlsUiModel.Bar> bars = ui.getBars();
+        for (final MlsUiModel.Bar bar : bars) {
+            y -= BAR_HEIGHT;
+            if (y < top) break;
+            paintBar(g, metrics, y, width, bar.value, bar.minimum, bar.maximum, bar.indeterminate, bar.text, start);
+        }
+
+        maxFrameNanos.accumulateAndGet(System.nanoTime() - start, Math::max);
+    }
+
+    private static void paintBar(
+        Graphics2D g, FontMetrics metrics, int y, int width,
+        long value, long minimum, long maximum, boolean indeterminate, String text, long now
+    ) {
+        g.setColor(TRACK);
+        g.fillRect(0, y, width, BAR_HEIGHT);
+        g.setColor(FILL);
+        if (indeterminate) {
+            final int chunk = width / 4;
+            // nanoTime can be negative, which % would carry into the phase
+            final long phase = Math.floorMod(now, INDETERMINATE_PERIOD_NANOS);
+            final int x = (int)(phase * (width + chunk) / INDETERMINATE_PERIOD_NANOS) - chunk;
+            g.fillRect(x, y, chunk, BAR_HEIGHT);
+        } else if (maximum > minimum) {
+            final long clamped = Math.max(minimum, Math.min(value, maximum));
+            g.fillRect(0, y, (int)((clamped - minimum) * width / (maximum - minimum)), BAR_HEIGHT);
+        }
+        paintText(g, metrics, y, width, text);
+    }
+
+    private static void paintText(Graphics2D g, FontMetrics metrics, int y, int width, String text) {
+        if (text == null || text.isEmpty()) return;
+        g.setColor(TEXT);
+        g.drawString(
+            text,
+            (width - metrics.stringWidth(text)) / 2,
+            y + (BAR_HEIGHT - metrics.getHeight()) / 2 + metrics.getAscent()
+        );
+    }
+}
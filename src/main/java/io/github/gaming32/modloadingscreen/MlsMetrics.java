@@ -0,0 +1,114 @@
+package io.github.gaming32.modloadingscreen;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Samples the JVM metrics shown in the metrics strip from the platform MXBeans. The beans are looked up once, and a
+ * sample is a {@code long[]} indexed by the constants below, which is what's sent over IPC. A value of {@code -1}
+ * means the metric isn't available on this JVM.
+ */
+final class MlsMetrics {
+    static final int GC_COUNT = 0;
+    static final int GC_TIME_MILLIS = 1;
+    static final int METASPACE_BYTES = 2;
+    static final int CODE_CACHE_BYTES = 3;
+    static final int DIRECT_BYTES = 4;
+    static final int JIT_TIME_MILLIS = 5;
+    static final int CPU_LOAD_PERMILLE = 6;
+    static final int COUNT = 7;
+
+    private final List<GarbageCollectorMXBean> gcs = ManagementFactory.getGarbageCollectorMXBeans();
+    private final List<MemoryPoolMXBean> metaspacePools = new ArrayList<>();
+    private final List<MemoryPoolMXBean> codeCachePools = new ArrayList<>();
+    private final BufferPoolMXBean directPool;
+    private final CompilationMXBean compilation;
+    private final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    private long[] last;
+
+    MlsMetrics() {
+        for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            final String name = pool.getName();
+            if (name.equals("Metaspace")) {
+                metaspacePools.add(pool);
+            } else if (name.equals("Code Cache") || name.startsWith("CodeHeap")) {
+                // Java 9+ splits the code cache into several CodeHeaps
+                codeCachePools.add(pool);
+            }
+        }
+        BufferPoolMXBean direct = null;
+        for (final BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                direct = pool;
+            }
+        }
+        directPool = direct;
+        final CompilationMXBean compilation = ManagementFactory.getCompilationMXBean();
+        this.compilation = compilation != null && compilation.isCompilationTimeMonitoringSupported() ? compilation : null;
+    }
+
+    /**
+     * Returns a new sample, or {@code null} if nothing changed since the last one.
+     */
+    long[] sample() {
+        final long[] result = new long[COUNT];
+        for (final GarbageCollectorMXBean gc : gcs) {
+            result[GC_COUNT] += Math.max(gc.getCollectionCount(), 0L);
+            result[GC_TIME_MILLIS] += Math.max(gc.getCollectionTime(), 0L);
+        }
+        result[METASPACE_BYTES] = sumUsage(metaspacePools);
+        result[CODE_CACHE_BYTES] = sumUsage(codeCachePools);
+        result[DIRECT_BYTES] = directPool != null ? directPool.getMemoryUsed() : -1L;
+        result[JIT_TIME_MILLIS] = compilation != null ? compilation.getTotalCompilationTime() : -1L;
+        result[CPU_LOAD_PERMILLE] = -1L;
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            final double load = ((com.sun.management.OperatingSystemMXBean)os).getProcessCpuLoad();
+            if (load >= 0) {
+                result[CPU_LOAD_PERMILLE] = Math.round(load * 1000);
+            }
+        }
+        if (Arrays.equals(result, last)) {
+            return null;
+        }
+        last = result;
+        return result;
+    }
+
+    private static long sumUsage(List<MemoryPoolMXBean> pools) {
+        if (pools.isEmpty()) {
+            return -1L;
+        }
+        long sum = 0;
+        for (final MemoryPoolMXBean pool : pools) {
+            sum += pool.getUsage().getUsed();
+        }
+        return sum;
+    }
+
+    static String format(long[] sample) {
+        final StringBuilder result = new StringBuilder();
+        result.append("GC ").append(sample[GC_COUNT]).append(" (").append(sample[GC_TIME_MILLIS]).append(" ms)");
+        appendMegabytes(result, "Metaspace", sample[METASPACE_BYTES]);
+        appendMegabytes(result, "Code cache", sample[CODE_CACHE_BYTES]);
+        appendMegabytes(result, "Direct", sample[DIRECT_BYTES]);
+        if (sample[JIT_TIME_MILLIS] >= 0) {
+            result.append(" \u00b7 JIT ").append(sample[JIT_TIME_MILLIS]).append(" ms");
+        }
+        if (sample[CPU_LOAD_PERMILLE] >= 0) {
+            result.append(" \u00b7 CPU ").append((sample[CPU_LOAD_PERMILLE] + 5) / 10).append('%');
+        }
+        return result.toString();
+    }
+
+    private static void appendMegabytes(StringBuilder result, String name, long bytes) {
+        if (bytes < 0) return;
+        result.append(" \u00b7 ").append(name).append(' ').append(Math.round(bytes / (1024.0 * 1024.0))).append(" MB");
+    }
+}
@@ -0,0 +1,173 @@
+package io.github.gaming32.modloadingscreen;
+
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the mod candidates Fabric's {@code ModDiscoverer} finds and scans, and times each scan. A scan is timed from
+ * the start of its {@code ModScanTask.compute()} until it returns, so a jar's time includes the jars nested in it.
+ * <p>
+ * Tasks are described reflectively, since {@code ModScanTask}'s fields are internal, falling back to the candidate's
+ * {@link Object#toString()}. Only the names of the slowest few scans are kept, so finished tasks, and the nested jars
+ * they hold, can be collected.
+ */
+final class MlsModScans {
+    private static final long SLOW_NANOS = 500_000_000L;
+    private static final long LARGE_BYTES = 64L << 20;
+    private static final int SLOWEST_LOGGED = 5;
+
+    private final AtomicInteger found = new AtomicInteger();
+    private final AtomicInteger scanned = new AtomicInteger();
+    private final Map<Object, Long> starts = new ConcurrentHashMap<>();
+    private final List<Scan> slowest = new ArrayList<>(SLOWEST_LOGGED + 1);
+    private volatile boolean fieldsFound;
+    private Field pathsField;
+    private Field localPathField;
+
+    /**
+     * Returns the number of candidates found so far, including this one.
+     */
+    int found() {
+        return found.incrementAndGet();
+    }
+
+    int getFound() {
+        return found.get();
+    }
+
+    int getScanned() {
+        return scanned.get();
+    }
+
+    void begin(Object task) {
+        starts.put(task, System.nanoTime());
+    }
+
+    /**
+     * Finishes timing the scan of {@code task}. Returns a warning to log if it was slow or its jar is large, or
+     * {@code null}.
+     */
+    String end(Object task, Object candidate) {
+        final long now = System.nanoTime();
+        scanned.incrementAndGet();
+        final Long start = starts.remove(task);
+        if (start == null) {
+            return null;
+        }
+        final long nanos = now - start;
+        final Path path = getPath(task);
+        long size = -1;
+        if (path != null) {
+            try {
+                size = Files.size(path);
+            } catch (Exception ignored) {
+            }
+        }
+        final String name = describe(task, candidate);
+        synchronized (slowest) {
+            int index = slowest.size();
+            while (index > 0 && slowest.get(index - 1).nanos < nanos) {
+                index--;
+            }
+            if (index < SLOWEST_LOGGED) {
+                slowest.add(index, new Scan(name, nanos));
+                if (slowest.size() > SLOWEST_LOGGED) {
+                    slowest.remove(SLOWEST_LOGGED);
+                }
+            }
+        }
+        if (nanos < SLOW_NANOS && size < LARGE_BYTES) {
+            return null;
+        }
+        final StringBuilder warning = new StringBuilder("Mod candidate ").append(name);
+        if (nanos >= SLOW_NANOS) {
+            warning.append(" took ").append(MlsEntrypointTimings.formatMillis(nanos)).append(" ms to scan");
+            if (size >= LARGE_BYTES) {
+                warning.append(" and");
+            }
+        }
+        if (size >= LARGE_BYTES) {
+            warning.append(" is ").append(size >> 20).append(" MiB");
+        }
+        return warning.toString();
+    }
+
+    /**
+     * Returns a line for each of the slowest scans.
+     */
+    List<String> getSlowest() {
+        final List<String> result = new ArrayList<>(SLOWEST_LOGGED);
+        synchronized (slowest) {
+            for (final Scan scan : slowest) {
+                result.add(scan.name + ": " + MlsEntrypointTimings.formatMillis(scan.nanos) + " ms");
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the jar or directory the task scans, or {@code null} if it's nested or has several paths.
+     */
+    private Path getPath(Object task) {
+        findFields(task.getClass());
+        if (pathsField == null) {
+            return null;
+        }
+        try {
+            if (localPathField != null && localPathField.get(task) != null) {
+                return null;
+            }
+            final List<?> paths = (List<?>)pathsField.get(task);
+            return paths.size() == 1 ? (Path)paths.get(0) : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private String describe(Object task, Object candidate) {
+        findFields(task.getClass());
+        if (pathsField != null) {
+            try {
+                final List<?> paths = (List<?>)pathsField.get(task);
+                final Object localPath = localPathField != null ? localPathField.get(task) : null;
+                final String outer = paths.size() == 1 ? String.valueOf(paths.get(0)) : String.valueOf(paths);
+                return localPath != null ? outer + " -> " + localPath : outer;
+            } catch (Exception ignored) {
+            }
+        }
+        return String.valueOf(candidate);
+    }
+
+    private void findFields(Class<?> taskClass) {
+        if (fieldsFound) return;
+        synchronized (this) {
+            if (fieldsFound) return;
+            try {
+                final Field paths = taskClass.getDeclaredField("paths");
+                paths.setAccessible(true);
+                pathsField = paths;
+                final Field localPath = taskClass.getDeclaredField("localPath");
+                localPath.setAccessible(true);
+                localPathField = localPath;
+            } catch (Exception ignored) {
+            }
+            fieldsFound = true;
+        }
+    }
+
+    private static final class Scan {
+        final String name;
+        final long nanos;
+
+        Scan(String name, long nanos) {
+            this.name = name;
+            this.nanos = nanos;
+        }
+    }
+}
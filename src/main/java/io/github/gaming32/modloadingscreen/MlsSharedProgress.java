@@ -0,0 +1,205 @@
+package io.github.gaming32.modloadingscreen;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * A memory-mapped table of progress values shared between the IPC server and the IPC client. The server writes
+ * values straight into the mapping, and the client samples it every frame, so progress updates don't go through the
+ * pipe at all.
+ * <p>
+ * The file is a 16-byte header (magic and slot count) followed by {@link #SLOT_COUNT} 32-byte slots of four longs:
+ * a sequence number, the value, the minimum, and the maximum. Slot {@link #MEMORY_SLOT} is the memory gauge, with the
+ * usage as the value and the total as the maximum. Each slot is guarded by a seqlock: the writer makes the sequence
+ * odd, writes the fields, then makes it even again, and the reader retries if it saw an odd or changed sequence.
+ * <p>
+ * Plain accesses to the mapping aren't ordered by anything else, so the writer puts a release fence around the fields,
+ * and the reader an acquire fence. These are {@code VarHandle}'s fences on Java 9 and newer, and {@code Unsafe}'s on
+ * Java 8, which has no public fence API.
+ */
+final class MlsSharedProgress {
+    static final int MEMORY_SLOT = 0;
+    static final int SLOT_COUNT = 64;
+
+    static final int FIELD_VALUE = 1;
+    static final int FIELD_MINIMUM = 2;
+    static final int FIELD_MAXIMUM = 3;
+
+    private static final int MAGIC = 0x4D4C5350; // MLSP
+    private static final int HEADER_SIZE = 16;
+    private static final int SLOT_SIZE = 32;
+    private static final int READ_ATTEMPTS = 16;
+
+    private static final MethodHandle STORE_FENCE;
+    private static final MethodHandle LOAD_FENCE;
+
+    static {
+        MethodHandle storeFence = null;
+        MethodHandle loadFence = null;
+        final MethodHandles.Lookup lookup = MethodHandles.lookup();
+        final MethodType fenceType = MethodType.methodType(void.class);
+        try {
+            final Class<?> varHandle = Class.forName("java.lang.invoke.VarHandle");
+            storeFence = lookup.findStatic(varHandle, "releaseFence", fenceType);
+            loadFence = lookup.findStatic(varHandle, "acquireFence", fenceType);
+        } catch (ReflectiveOperationException ignored) {
+            try {
+                final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                final Object unsafe = theUnsafe.get(null);
+                storeFence = lookup.findVirtual(unsafeClass, "storeFence", fenceType).bindTo(unsafe);
+                loadFence = lookup.findVirtual(unsafeClass, "loadFence", fenceType).bindTo(unsafe);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                storeFence = null;
+                loadFence = null;
+            }
+        }
+        STORE_FENCE = storeFence;
+        LOAD_FENCE = loadFence;
+    }
+
+    private final MappedByteBuffer buffer;
+    private final Object[] writeLocks;
+    private final boolean[] allocated;
+    private int nextSlot = MEMORY_SLOT + 1;
+
+    private MlsSharedProgress(MappedByteBuffer buffer, boolean writable) {
+        this.buffer = buffer;
+        if (writable) {
+            writeLocks = new Object[SLOT_COUNT];
+            for (int i = 0; i < SLOT_COUNT; i++) {
+                writeLocks[i] = new Object();
+            }
+            allocated = new boolean[SLOT_COUNT];
+            allocated[MEMORY_SLOT] = true;
+        } else {
+            writeLocks = null;
+            allocated = null;
+        }
+    }
+
+    static MlsSharedProgress create(Path path) throws IOException {
+        checkFences();
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            final long size = HEADER_SIZE + (long)SLOT_COUNT * SLOT_SIZE;
+            file.setLength(size);
+            final MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            for (int i = 0; i < size; i += 8) {
+                buffer.putLong(i, 0L);
+            }
+            buffer.putInt(4, SLOT_COUNT);
+            storeFence();
+            buffer.putInt(0, MAGIC);
+            return new MlsSharedProgress(buffer, true);
+        }
+    }
+
+    static MlsSharedProgress open(Path path) throws IOException {
+        checkFences();
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "r")) {
+            final MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != SLOT_COUNT) {
+                throw new IOException("Shared progress file " + path + " has an unknown layout");
+            }
+            return new MlsSharedProgress(buffer, false);
+        }
+    }
+
+    /**
+     * Returns a free bar slot, or {@code -1} if there are none left. Slots are handed out round-robin, so a slot that
+     * was just released isn't reused while the client may still be showing the old bar.
+     */
+    synchronized int allocate() {
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            final int slot = nextSlot;
+            nextSlot = nextSlot + 1 == SLOT_COUNT ? MEMORY_SLOT + 1 : nextSlot + 1;
+            if (!allocated[slot]) {
+                allocated[slot] = true;
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    synchronized void release(int slot) {
+        allocated[slot] = false;
+    }
+
+    void write(int slot, long value, long minimum, long maximum) {
+        final int base = HEADER_SIZE + slot * SLOT_SIZE;
+        synchronized (writeLocks[slot]) {
+            final long seq = buffer.getLong(base);
+            buffer.putLong(base, seq + 1);
+            storeFence();
+            buffer.putLong(base + 8 * FIELD_VALUE, value);
+            buffer.putLong(base + 8 * FIELD_MINIMUM, minimum);
+            buffer.putLong(base + 8 * FIELD_MAXIMUM, maximum);
+            storeFence();
+            buffer.putLong(base, seq + 2);
+        }
+    }
+
+    void writeField(int slot, int field, long value) {
+        final int base = HEADER_SIZE + slot * SLOT_SIZE;
+        synchronized (writeLocks[slot]) {
+            final long seq = buffer.getLong(base);
+            buffer.putLong(base, seq + 1);
+            storeFence();
+            buffer.putLong(base + 8 * field, value);
+            storeFence();
+            buffer.putLong(base, seq + 2);
+        }
+    }
+
+    /**
+     * Reads a consistent snapshot of a slot into {@code into}, as sequence, value, minimum, and maximum. Returns
+     * {@code false} if the writer kept the slot busy for too long, in which case the caller should try next frame.
+     */
+    boolean read(int slot, long[] into) {
+        final int base = HEADER_SIZE + slot * SLOT_SIZE;
+        for (int attempt = 0; attempt < READ_ATTEMPTS; attempt++) {
+            final long seq = buffer.getLong(base);
+            if ((seq & 1) != 0) continue;
+            loadFence();
+            into[1] = buffer.getLong(base + 8 * FIELD_VALUE);
+            into[2] = buffer.getLong(base + 8 * FIELD_MINIMUM);
+            into[3] = buffer.getLong(base + 8 * FIELD_MAXIMUM);
+            loadFence();
+            if (buffer.getLong(base) == seq) {
+                into[0] = seq;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void checkFences() throws IOException {
+        if (STORE_FENCE == null || LOAD_FENCE == null) {
+            throw new IOException("No memory fences are available to share progress safely");
+        }
+    }
+
+    private static void storeFence() {
+        try {
+            STORE_FENCE.invokeExact();
+        } catch (Throwable t) {
+            throw new AssertionError(t);
+        }
+    }
+
+    private static void loadFence() {
+        try {
+            LOAD_FENCE.invokeExact();
+        } catch (Throwable t) {
+            throw new AssertionError(t);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package io.github.gaming32.modloadingscreen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * How long each entrypoint type (a phase), and each mod's containers within it, took in previous launches, and how far
+ * the current launch is along by that measure.
+ * <p>
+ * Durations are kept as an exponentially weighted moving average, so the history follows a pack as mods are updated.
+ * Entries that weren't seen for {@link #MAX_AGE} launches are dropped, and at most {@link #MAX_ENTRIES} are kept.
+ */
+final class MlsTimingHistory {
+    private static final int MAGIC = 0x4D4C5348; // MLSH
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAX_ENTRIES = 1024;
+    private static final int MAX_AGE = 8;
+    private static final double ALPHA = 0.3;
+
+    private final Path file;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private int launch;
+    private long expectedTotal;
+
+    private final Map<String, Long> actuals = new HashMap<>();
+    private final Map<String, Phase> phases = new HashMap<>();
+    private long finishedExpected;
+
+    private MlsTimingHistory(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads the history from {@code file}. A missing or unreadable file is treated as an empty history.
+     */
+    static MlsTimingHistory load(Path file) {
+        final MlsTimingHistory result = new MlsTimingHistory(file);
+        try (DataInputStream is = new DataInputStream(Files.newInputStream(file))) {
+            if (is.readInt() == MAGIC && is.readInt() == FORMAT_VERSION) {
+                result.launch = is.readInt();
+                final int count = is.readInt();
+                for (int i = 0; i < count; i++) {
+                    final String key = is.readUTF();
+                    result.entries.put(key, new Entry(is.readLong(), is.readInt()));
+                }
+            }
+        } catch (NoSuchFileException ignored) {
+        } catch (IOException e) {
+            // Start over
+            result.entries.clear();
+        }
+        result.launch++;
+        for (final Map.Entry<String, Entry> entry : result.entries.entrySet()) {
+            if (entry.getKey().startsWith("phase:")) {
+                result.expectedTotal += entry.getValue().nanos;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns how long this launch's entrypoints are expected to take in total, or {@code 0} if there's no history.
+     */
+    long getExpectedTotal() {
+        return expectedTotal;
+    }
+
+    synchronized void beginPhase(String type, long now) {
+        phases.put(type, new Phase(now, expected("phase:" + type)));
+    }
+
+    synchronized void beginContainer(String type, String modId, long now) {
+        final Phase phase = phases.get(type);
+        if (phase == null) return;
+        finishContainer(phase, now);
+        phase.container = "mod:" + type + '/' + modId;
+        phase.containerStart = now;
+        phase.containerExpected = expected(phase.container);
+    }
+
+    /**
+     * Finishes the running container of {@code type} without starting another.
+     */
+    synchronized void endContainer(String type, long now) {
+        final Phase phase = phases.get(type);
+        if (phase == null) return;
+        finishContainer(phase, now);
+    }
+
+    /**
+     * Records a container of {@code type} that ran alongside others, given how long it took.
+     */
+    synchronized void addContainer(String type, String modId, long nanos) {
+        final Phase phase = phases.get(type);
+        if (phase == null) return;
+        final String key = "mod:" + type + '/' + modId;
+        actuals.merge(key, nanos, Long::sum);
+        phase.doneExpected += expected(key);
+    }
+
+    synchronized void endPhase(String type, long now) {
+        final Phase phase = phases.remove(type);
+        if (phase == null) return;
+        finishContainer(phase, now);
+        actuals.merge("phase:" + type, now - phase.start, Long::sum);
+        finishedExpected += phase.expected;
+    }
+
+    private void finishContainer(Phase phase, long now) {
+        if (phase.container == null) return;
+        actuals.merge(phase.container, now - phase.containerStart, Long::sum);
+        phase.doneExpected += phase.containerExpected;
+        phase.container = null;
+    }
+
+    /**
+     * Returns how much of {@link #getExpectedTotal()} the launch has gotten through. Each container counts as its
+     * expected duration once it's finished, and as the time spent in it so far, up to that, while it's running.
+     */
+    synchronized long getExpectedDone(long now) {
+        long result = finishedExpected;
+        for (final Phase phase : phases.values()) {
+            long done = phase.doneExpected;
+            if (phase.container != null) {
+                done += Math.min(now - phase.containerStart, phase.containerExpected);
+            }
+            result += Math.min(done, phase.expected);
+        }
+        return Math.min(result, expectedTotal);
+    }
+
+    /**
+     * Merges this launch's durations into the history and writes it back.
+     */
+    synchronized void save() throws IOException {
+        for (final Map.Entry<String, Long> actual : actuals.entrySet()) {
+            final Entry entry = entries.get(actual.getKey());
+            if (entry == null) {
+                entries.put(actual.getKey(), new Entry(actual.getValue(), launch));
+            } else {
+                entry.nanos += Math.round(ALPHA * (actual.getValue() - entry.nanos));
+                entry.lastLaunch = launch;
+            }
+        }
+        entries.values().removeIf(entry -> launch - entry.lastLaunch >= MAX_AGE);
+        if (entries.size() > MAX_ENTRIES) {
+            final List<Map.Entry<String, Entry>> oldest = new ArrayList<>(entries.entrySet());
+            oldest.sort((a, b) -> Integer.compare(a.getValue().lastLaunch, b.getValue().lastLaunch));
+            for (int i = 0, n = entries.size() - MAX_ENTRIES; i < n; i++) {
+                entries.remove(oldest.get(i).getKey());
+            }
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream os = new DataOutputStream(bytes)) {
+            os.writeInt(MAGIC);
+            os.writeInt(FORMAT_VERSION);
+            os.writeInt(launch);
+            os.writeInt(entries.size());
+            for (final Map.Entry<String, Entry> entry : entries.entrySet()) {
+                os.writeUTF(entry.getKey());
+                os.writeLong(entry.getValue().nanos);
+                os.writeInt(entry.getValue().lastLaunch);
+            }
+        }
+        MlsCache.writeAtomically(file, bytes.toByteArray());
+    }
+
+    private long expected(String key) {
+        final Entry entry = entries.get(key);
+        return entry != null ? entry.nanos : 0L;
+    }
+
+    private static final class Entry {
+        long nanos;
+        int lastLaunch;
+
+        Entry(long nanos, int lastLaunch) {
+            this.nanos = nanos;
+            this.lastLaunch = lastLaunch;
+        }
+    }
+
+    private static final class Phase {
+        final long start;
+        final long expected;
+        long doneExpected;
+        String container;
+        long containerStart;
+        long containerExpected;
+
+        Phase(long start, long expected) {
+            this.start = start;
+            this.expected = expected;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package io.github.gaming32.modloadingscreen;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records what the hooks do into a preallocated ring buffer, and exports it in the Chrome Trace Event format, which
+ * {@code chrome://tracing} and Perfetto can open.
+ * <p>
+ * A record is {@link #RECORD_LONGS} longs: the {@link System#nanoTime()} it happened at, the ids of two interned
+ * strings, a value, and the event kind with the id of the thread it happened on. Recording an event only allocates the
+ * first time a string is seen. Once the buffer is full, the oldest records are overwritten.
+ */
+final class MlsTracer {
+    static final int ENTRYPOINT_TYPE_BEGIN = 0;
+    static final int ENTRYPOINT_TYPE_END = 1;
+    static final int SINGLE_ENTRYPOINT = 2;
+    static final int CUSTOM_BAR_CREATE = 3;
+    static final int CUSTOM_BAR_OP = 4;
+    static final int MEMORY = 5;
+    static final int CLOSE = 6;
+
+    private static final int RECORD_LONGS = 4;
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private final long startNanos;
+    private final int mask;
+    private final long[] records;
+    private final AtomicLong next = new AtomicLong();
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final List<String> strings = new ArrayList<>();
+
+    MlsTracer(long startNanos) {
+        this(startNanos, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity The number of records to keep. Must be a power of two.
+     */
+    MlsTracer(long startNanos, int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two");
+        }
+        this.startNanos = startNanos;
+        mask = capacity - 1;
+        records = new long[capacity * RECORD_LONGS];
+    }
+
+    /**
+     * @param name The thing the event is about, such as the entrypoint type or custom bar id
+     * @param arg A second string whose meaning depends on {@code kind}, or {@code null}
+     */
+    void record(int kind, String name, String arg, long value) {
+        final long time = System.nanoTime();
+        final long names = (long)intern(name) << 32 | intern(arg) & 0xffffffffL;
+        final long kindAndThread = Thread.currentThread().getId() << 8 | kind;
+        final int index = (int)(next.getAndIncrement() & mask) * RECORD_LONGS;
+        records[index] = time;
+        records[index + 1] = names;
+        records[index + 2] = value;
+        records[index + 3] = kindAndThread;
+    }
+
+    int intern(String value) {
+        if (value == null) {
+            return -1;
+        }
+        Integer id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+        synchronized (strings) {
+            id = ids.get(value);
+            if (id == null) {
+                id = strings.size();
+                strings.add(value);
+                ids.put(value, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Returns the number of events recorded, including any that were overwritten.
+     */
+    long getCount() {
+        return next.get();
+    }
+
+    /**
+     * Writes the recorded events as Chrome Trace Event JSON. Entrypoint types become slices, with a nested slice for
+     * each mod's container, and custom bars and memory usage become counters.
+     */
+    void write(Path file) throws IOException {
+        final long end = next.get();
+        final long begin = Math.max(0, end - (mask + 1));
+        final String[] strings;
+        synchronized (this.strings) {
+            strings = this.strings.toArray(new String[0]);
+        }
+        final Map<String, Long> openContainers = new HashMap<>();
+
+        final StringBuilder json = new StringBuilder("{\"displayTimeUnit\": \"ms\", \"traceEvents\": [\n");
+        json.append("  {\"name\": \"process_name\", \"ph\": \"M\", \"pid\": 1, \"args\": {\"name\": \"Mod Loading Screen\"}}");
+        for (long i = begin; i < end; i++) {
+            final int index = (int)(i & mask) * RECORD_LONGS;
+            final long time = records[index];
+            final String name = string(strings, (int)(records[index + 1] >> 32));
+            final String arg = string(strings, (int)records[index + 1]);
+            final long value = records[index + 2];
+            final int kind = (int)(records[index + 3] & 0xff);
+            final long thread = records[index + 3] >>> 8;
+            switch (kind) {
+                case ENTRYPOINT_TYPE_BEGIN:
+                    appendEvent(json, "entrypoint '" + name + "'", "entrypoint", 'B', time, thread);
+                    json.append(", \"args\": {\"type\": ");
+                    MlsCache.appendJsonString(json, String.valueOf(arg));
+                    json.append(", \"containers\": ").append(value).append("}}");
+                    break;
+                case SINGLE_ENTRYPOINT: {
+                    final Long openThread = openContainers.put(name, thread);
+                    if (openThread != null) {
+                        appendEvent(json, null, "entrypoint", 'E', time, openThread);
+                        json.append('}');
+                    }
+                    appendEvent(json, String.valueOf(arg), "entrypoint", 'B', time, thread);
+                    json.append(", \"args\": {\"modId\": ");
+                    MlsCache.appendJsonString(json, String.valueOf(string(strings, (int)value)));
+                    json.append("}}");
+                    break;
+                }
+                case ENTRYPOINT_TYPE_END: {
+                    final Long openThread = openContainers.remove(name);
+                    if (openThread != null) {
+                        appendEvent(json, null, "entrypoint", 'E', time, openThread);
+                        json.append('}');
+                    }
+                    appendEvent(json, null, "entrypoint", 'E', time, thread);
+                    json.append('}');
+                    break;
+                }
+                case CUSTOM_BAR_CREATE:
+                    appendEvent(json, "custom bar '" + name + "' created", "custom", 'i', time, thread);
+                    json.append(", \"args\": {\"title\": ");
+                    MlsCache.appendJsonString(json, String.valueOf(arg));
+                    json.append(", \"maximum\": ").append(value).append("}}");
+                    break;
+                case CUSTOM_BAR_OP: {
+                    final int op = (int)(value >> 32);
+                    final int opValue = (int)value;
+                    if (op == MlsIpc.OP_PROGRESS) {
+                        appendEvent(json, "custom bar '" + name + "'", "custom", 'C', time, thread);
+                        json.append(", \"args\": {\"progress\": ").append(opValue).append("}}");
+                    } else {
+                        appendEvent(json, "custom bar '" + name + "' " + MlsIpc.opName(op), "custom", 'i', time, thread);
+                        json.append(", \"args\": {");
+                        if (op == MlsIpc.OP_TITLE) {
+                            json.append("\"title\": ");
+                            MlsCache.appendJsonString(json, String.valueOf(arg));
+                        } else if (op != MlsIpc.OP_CLOSE) {
+                            json.append("\"value\": ").append(opValue);
+                        }
+                        json.append("}}");
+                    }
+                    break;
+                }
+                case MEMORY:
+                    appendEvent(json, "memory", "memory", 'C', time, thread);
+                    json.append(", \"args\": {\"used MB\": ").append(value >> 20).append("}}");
+                    break;
+                case CLOSE:
+                    appendEvent(json, "close", "screen", 'i', time, thread);
+                    json.append(", \"s\": \"g\"}");
+                    break;
+            }
+        }
+        json.append("\n]}\n");
+        MlsCache.writeAtomically(file, json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void appendEvent(StringBuilder json, String name, String category, char phase, long time, long thread) {
+        json.append(",\n  {");
+        if (name != null) {
+            json.append("\"name\": ");
+            MlsCache.appendJsonString(json, name);
+            json.append(", ");
+        }
+        json.append("\"cat\": \"").append(category)
+            .append("\", \"ph\": \"").append(phase)
+            .append("\", \"ts\": ").append(String.format(Locale.ROOT, "%.3f", (time - startNanos) / 1000.0))
+            .append(", \"pid\": 1, \"tid\": ").append(thread);
+    }
+
+    private static String string(String[] strings, int id) {
+        return id >= 0 && id < strings.length ? strings[id] : null;
+    }
+}
@@ -0,0 +1,99 @@
+package io.github.gaming32.modloadingscreen;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Keeps the classes {@link MlsTransformers} transformed, so a launch with the same loader and Mod Loading Screen
+ * version can skip ASM entirely.
+ * <p>
+ * There's one file per class: a header (magic, format version, and output length), the key it was transformed
+ * for, the SHA-256 of the output, and the output. The key is the SHA-256 of the input bytes and the version string, so
+ * a different loader version or transformer replaces the entry. A file that fails any check is ignored and replaced.
+ */
+final class MlsTransformCache {
+    private static final int MAGIC = 0x4D4C5354; // MLST
+    private static final int FORMAT_VERSION = 1;
+    private static final int HASH_SIZE = 32;
+    private static final int HEADER_SIZE = 12 + 2 * HASH_SIZE;
+
+    private final Path dir;
+    private final byte[] version;
+
+    /**
+     * @param version Identifies the transformers. Entries made with a different version are never returned.
+     */
+    MlsTransformCache(Path dir, String version) {
+        this.dir = dir;
+        this.version = version.getBytes(StandardCharsets.UTF_8);
+    }
+
+    byte[] key(byte[] input) {
+        final MessageDigest digest = MlsCache.sha256();
+        digest.update(input);
+        digest.update(version);
+        return digest.digest();
+    }
+
+    /**
+     * Returns the cached output for {@code key}, or {@code null} if there isn't a valid one.
+     */
+    byte[] get(String className, byte[] key) {
+        final byte[] file;
+        try {
+            file = Files.readAllBytes(path(className));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            System.err.println("[ModLoadingScreen] [WARN] Failed to read cached " + className);
+            return null;
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(file);
+        if (
+            file.length < HEADER_SIZE ||
+                buffer.getInt() != MAGIC ||
+                buffer.getInt() != FORMAT_VERSION ||
+                buffer.getInt() != file.length - HEADER_SIZE
+        ) {
+            return null;
+        }
+        final byte[] cachedKey = new byte[HASH_SIZE];
+        final byte[] outputHash = new byte[HASH_SIZE];
+        buffer.get(cachedKey).get(outputHash);
+        if (!Arrays.equals(cachedKey, key)) {
+            return null;
+        }
+        final byte[] output = Arrays.copyOfRange(file, HEADER_SIZE, file.length);
+        if (!Arrays.equals(MlsCache.sha256().digest(output), outputHash)) {
+            System.err.println("[ModLoadingScreen] [WARN] Cached " + className + " is corrupt. Transforming it again.");
+            return null;
+        }
+        return output;
+    }
+
+    void put(String className, byte[] key, byte[] output) {
+        final ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + output.length);
+        buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(output.length)
+            .put(key)
+            .put(MlsCache.sha256().digest(output))
+            .put(output);
+        buffer.flip();
+        try {
+            Files.createDirectories(dir);
+            MlsCache.writeAtomically(path(className), buffer);
+        } catch (IOException e) {
+            System.err.println("[ModLoadingScreen] [WARN] Failed to cache transformed " + className);
+            e.printStackTrace();
+        }
+    }
+
+    private Path path(String className) {
+        return dir.resolve(className.replace('/', '.') + ".class.cache");
+    }
+}
@@ -1,26 +1,44 @@
 package io.github.gaming32.modloadingscreen;
 
 import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
-import org.objectweb.asm.tree.*;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.security.ProtectionDomain;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.ListIterator;
+import java.util.List;
 import java.util.Map;
-import java.util.function.Consumer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
 
 public final class MlsTransformers {
     private static final boolean DUMP_TRANSFORMED_CLASSES =
         Boolean.getBoolean("mod-loading-screen.dumpTransformedClasses");
     private static volatile boolean notifiedClassDump;
 
+    /**
+     * Bump this whenever the transformers change, so that builds with the same version don't use each other's cached
+     * classes.
+     */
+    static final int TRANSFORMER_REVISION = 4;
+    private static final String VERSION_RESOURCE = "/assets/mod-loading-screen/version.txt";
+    private static volatile MlsTransformCache cache;
+
     public static final String FABRIC_LOADER_IMPL = "net/fabricmc/loader/impl/FabricLoaderImpl";
 
     public static final String FABRIC_ENTRYPOINT_UTILS = "net/fabricmc/loader/impl/entrypoint/EntrypointUtils";
@@ -31,7 +49,10 @@ public final class MlsTransformers {
     private static final String MOD_METADATA = "net/fabricmc/loader/api/metadata/ModMetadata";
 
     private static final String MOD_DISCOVERER = "net/fabricmc/loader/impl/discovery/ModDiscoverer";
+    private static final String MOD_SCAN_TASK = "net/fabricmc/loader/impl/discovery/ModDiscoverer$ModScanTask";
+    private static final String FABRIC_MOD_RESOLVER = "net/fabricmc/loader/impl/discovery/ModResolver";
     private static final String MOD_RESOLVER = "org/quiltmc/loader/impl/discovery/ModResolver";
+    private static final String QUILT_PLUGIN_MANAGER = "org/quiltmc/loader/impl/plugin/QuiltPluginManagerImpl";
     private static final String FABRIC_BUILTIN_MOD = "net/fabricmc/loader/impl/game/GameProvider$BuiltinMod";
     private static final String QUILT_BUILTIN_MOD = "org/quiltmc/loader/impl/game/GameProvider$BuiltinMod";
     private static final String FABRIC_VERSION = "net/fabricmc/loader/api/Version";
@@ -42,29 +63,96 @@ public final class MlsTransformers {
 
     public static final String ACTUAL_LOADING_SCREEN = "io/github/gaming32/modloadingscreen/ActualLoadingScreen";
 
-    public static final Map<String, Collection<Consumer<ClassNode>>> TRANSFORMERS;
+    private static final int ASM_API = Opcodes.ASM9;
+
+    private static final Handle HOOK_BOOTSTRAP = new Handle(
+        Opcodes.H_INVOKESTATIC, ACTUAL_LOADING_SCREEN, "bootstrapHook",
+        "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;",
+        false
+    );
+
+    /**
+     * Each transformer wraps the {@link ClassVisitor} the class is written to, and only changes the method it's for.
+     * They insert no branches and leave the operand stack as they found it, so the class's existing stack map frames
+     * stay valid, and only the max stack sizes have to be recomputed.
+     */
+    public static final Map<String, Collection<UnaryOperator<ClassVisitor>>> TRANSFORMERS;
 
     static {
-        final Map<String, Collection<Consumer<ClassNode>>> transformers = new HashMap<>(8);
+        final Map<String, Collection<UnaryOperator<ClassVisitor>>> transformers = new HashMap<>(16);
         transformers.put(FABRIC_LOADER_IMPL, Collections.singleton(
-            MlsTransformers::instrumentFabricLoaderImplInvokeEntrypoints
+            cv -> new MethodTransformer(
+                cv, FABRIC_LOADER_IMPL, "invokeEntrypoints",
+                "New-style FabricLoaderImpl.invokeEntrypoints not found. Assuming old Fabric.",
+                mv -> new EntrypointHooks(mv, false, true)
+            )
         ));
         transformers.put(FABRIC_ENTRYPOINT_UTILS, Arrays.asList(
-            clazz -> instrumentEntrypointUtilsInvoke(clazz, false),
-            clazz -> instrumentEntrypointUtilsInvoke0(clazz, false)
+            cv -> new MethodTransformer(cv, FABRIC_ENTRYPOINT_UTILS, "invoke", null, MaybeCloseAfterHook::new),
+            cv -> new MethodTransformer(
+                cv, FABRIC_ENTRYPOINT_UTILS, "invoke0", null, mv -> new EntrypointHooks(mv, false, false)
+            )
         ));
         transformers.put(QUILT_ENTRYPOINT_UTILS, Arrays.asList(
-            clazz -> instrumentEntrypointUtilsInvoke(clazz, true),
-            clazz -> instrumentEntrypointUtilsInvoke0(clazz, true)
+            cv -> new MethodTransformer(cv, QUILT_ENTRYPOINT_UTILS, "invokeContainer", null, MaybeCloseAfterHook::new),
+            cv -> new MethodTransformer(
+                cv, QUILT_ENTRYPOINT_UTILS, "invoke0", null, mv -> new EntrypointHooks(mv, true, false)
+            )
         ));
-        transformers.put(MOD_DISCOVERER, Collections.singleton(
-            clazz -> instrumentModDiscovererDiscoverMods(clazz, false)
+        transformers.put(MOD_DISCOVERER, Arrays.asList(
+            cv -> new MethodTransformer(
+                cv, MOD_DISCOVERER, "discoverMods", null,
+                mv -> new BuiltinModTitleHook(
+                    mv, FABRIC_BUILTIN_MOD, MOD_METADATA, "getId", "getName",
+                    "getVersion", FABRIC_VERSION, "getFriendlyString"
+                )
+            ),
+            cv -> new MethodTransformer(
+                cv, MOD_DISCOVERER, "discoverMods", null,
+                mv -> new BoundaryHooks(mv, "beforeModDiscovery", "afterModDiscovery")
+            )
         ));
-        transformers.put(MOD_RESOLVER, Collections.singleton(
-            clazz -> instrumentModDiscovererDiscoverMods(clazz, true)
+        transformers.put(MOD_SCAN_TASK, Arrays.asList(
+            cv -> new MethodTransformer(
+                cv, MOD_SCAN_TASK, "<init>", null, true,
+                mv -> new AfterSuperConstructorHook(mv, "java/util/concurrent/RecursiveTask", "modCandidateFound")
+            ),
+            cv -> new MethodTransformer(cv, MOD_SCAN_TASK, "compute", null, ModScanHooks::new)
+        ));
+        transformers.put(FABRIC_MOD_RESOLVER, Collections.singleton(
+            cv -> new MethodTransformer(
+                cv, FABRIC_MOD_RESOLVER, "resolve", null,
+                mv -> new BoundaryHooks(mv, "beforeModResolution", "afterModResolution")
+            )
+        ));
+        transformers.put(MOD_RESOLVER, Arrays.asList(
+            cv -> new MethodTransformer(
+                cv, MOD_RESOLVER, "resolve", null,
+                mv -> new BuiltinModTitleHook(
+                    mv, QUILT_BUILTIN_MOD, MOD_METADATA, "getId", "getName",
+                    "getVersion", FABRIC_VERSION, "getFriendlyString"
+                )
+            ),
+            cv -> new MethodTransformer(
+                cv, MOD_RESOLVER, "resolve", null,
+                mv -> new BoundaryHooks(mv, "beforeModDiscovery", "afterModResolution")
+            )
+        ));
+        transformers.put(QUILT_PLUGIN_MANAGER, Collections.singleton(
+            cv -> new MethodTransformer(
+                cv, QUILT_PLUGIN_MANAGER, "run",
+                "QuiltPluginManagerImpl.run not found. Assuming old Quilt.",
+                mv -> new BoundaryHooks(mv, "beforeModDiscovery", "afterModResolution")
+            )
         ));
         transformers.put(STANDARD_QUILT_PLUGIN, Collections.singleton(
-            MlsTransformers::instrumentStandardQuiltPluginAddBuiltinMods
+            cv -> new MethodTransformer(
+                cv, STANDARD_QUILT_PLUGIN, "addBuiltinMods", null,
+                mv -> new BuiltinModTitleHook(
+                    mv, QUILT_BUILTIN_MOD, INTERNAL_MOD_METADATA, "id", "name",
+                    "version", QUILT_VERSION, "raw"
+                )
+            )
         ));
         TRANSFORMERS = Collections.unmodifiableMap(transformers);
     }
@@ -100,23 +188,20 @@ public final class MlsTransformers {
         }
 
         try {
-            final Collection<Consumer<ClassNode>> transformer = TRANSFORMERS.get(name);
+            final Collection<UnaryOperator<ClassVisitor>> transformer = TRANSFORMERS.get(name);
             if (transformer != null) {
-                System.out.println("[ModLoadingScreen] Transforming " + name);
-                final ClassReader reader = new ClassReader(bytes);
-                final ClassNode clazz = new ClassNode();
-                reader.accept(clazz, 0);
-                for (final Consumer<ClassNode> part : transformer) {
-                    try {
-                        part.accept(clazz);
-                    } catch (Exception e) {
-                        System.err.println("[ModLoadingScreen] [ERROR] Transformer " + part + " for " + name + " failed");
-                        e.printStackTrace();
+                final MlsTransformCache cache = MlsTransformers.cache;
+                final byte[] key = cache != null ? cache.key(bytes) : null;
+                byte[] result = cache != null ? cache.get(name, key) : null;
+                if (result != null) {
+                    System.out.println("[ModLoadingScreen] Using cached transformed " + name);
+                } else {
+                    System.out.println("[ModLoadingScreen] Transforming " + name);
+                    result = transform(transformer, bytes);
+                    if (cache != null) {
+                        cache.put(name, key, result);
                     }
                 }
-                final ClassWriter writer = new ClassWriter(reader, ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
-                clazz.accept(writer);
-                final byte[] result = writer.toByteArray();
                 if (DUMP_TRANSFORMED_CLASSES) {
                     try {
                         final Path dumpedPath = Paths.get(".mlsDebugDump", name + ".class");
@@ -136,233 +221,515 @@ public final class MlsTransformers {
         return null;
     }
 
-    private static void instrumentFabricLoaderImplInvokeEntrypoints(ClassNode clazz) {
-        final MethodNode method = clazz.methods.stream()
-            .filter(m -> m.name.equals("invokeEntrypoints"))
-            .findFirst()
-            .orElse(null);
-        if (method == null) {
-            System.out.println("[ModLoadingScreen] New-style FabricLoaderImpl.invokeEntrypoints not found. Assuming old Fabric.");
+    /**
+     * Registers a transformer that applies {@link #TRANSFORMERS}. It removes itself once every class the loader has is
+     * transformed, so classes defined after that don't go through it at all.
+     */
+    static PatchingTransformer install(Instrumentation instrumentation, boolean onQuilt, boolean canRetransform) {
+        final PatchingTransformer transformer = new PatchingTransformer(instrumentation, onQuilt);
+        instrumentation.addTransformer(transformer, canRetransform);
+        return transformer;
+    }
+
+    /**
+     * Keeps transformed classes in {@code cacheDir}. The cache is keyed on the Mod Loading Screen version, so it's only
+     * enabled if that's known.
+     */
+    static void enableCache(Path cacheDir) {
+        final String version;
+        try (InputStream is = MlsTransformers.class.getResourceAsStream(VERSION_RESOURCE)) {
+            if (is == null) {
+                System.out.println("[ModLoadingScreen] Mod Loading Screen version unknown. Not caching transformed classes.");
+                return;
+            }
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[256];
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                bytes.write(buffer, 0, n);
+            }
+            version = new String(bytes.toByteArray(), StandardCharsets.UTF_8).trim();
+        } catch (IOException e) {
+            System.err.println("[ModLoadingScreen] [WARN] Failed to read Mod Loading Screen version. Not caching transformed classes.");
+            e.printStackTrace();
             return;
         }
-        final ListIterator<AbstractInsnNode> it = method.instructions.iterator();
+        cache = new MlsTransformCache(cacheDir.resolve("transformed"), version + '/' + TRANSFORMER_REVISION);
+    }
 
-        maybeCloseAfter(it, true);
+    static byte[] transform(Collection<UnaryOperator<ClassVisitor>> transformer, byte[] bytes) {
+        final ClassReader reader = new ClassReader(bytes);
+        // Passing the reader lets the writer copy the constant pool, and the methods no transformer touches, as-is
+        final ClassWriter writer = new ClassWriter(reader, ClassWriter.COMPUTE_MAXS);
+        ClassVisitor visitor = writer;
+        for (final UnaryOperator<ClassVisitor> part : transformer) {
+            visitor = part.apply(visitor);
+        }
+        reader.accept(visitor, 0);
+        return writer.toByteArray();
+    }
 
-        while (it.hasNext()) {
-            final AbstractInsnNode insn = it.next();
-            if (!(insn instanceof InsnNode)) continue;
-            if (insn.getOpcode() == Opcodes.ACONST_NULL) break;
+    static final class PatchingTransformer implements ClassFileTransformer {
+        private final Instrumentation instrumentation;
+        private final Set<String> pending = ConcurrentHashMap.newKeySet();
+        private volatile boolean removed;
+
+        private PatchingTransformer(Instrumentation instrumentation, boolean onQuilt) {
+            this.instrumentation = instrumentation;
+            final List<String> targets;
+            if (onQuilt) {
+                targets = Arrays.asList(
+                    QUILT_ENTRYPOINT_UTILS, MOD_RESOLVER, STANDARD_QUILT_PLUGIN, QUILT_PLUGIN_MANAGER
+                );
+            } else {
+                targets = Arrays.asList(
+                    FABRIC_LOADER_IMPL, FABRIC_ENTRYPOINT_UTILS, MOD_DISCOVERER, MOD_SCAN_TASK, FABRIC_MOD_RESOLVER
+                );
+            }
+            // Each loader version only has some of the targets (old Quilt has ModResolver, new Quilt has the plugin
+            // classes instead), so only wait for the ones this loader has
+            for (final String target : targets) {
+                if (ClassLoader.getSystemResource(target + ".class") != null) {
+                    pending.add(target);
+                }
+            }
+            if (pending.isEmpty()) {
+                // The loader isn't visible as resources, so there's no telling which targets exist
+                pending.addAll(targets);
+            }
         }
-        it.previous();
-        mainEntrypointHooks(it, false,  true);
 
-        maybeCloseAfter(it, true);
+        @Override
+        public byte[] transform(
+            ClassLoader loader,
+            String className,
+            Class<?> classBeingRedefined,
+            ProtectionDomain protectionDomain,
+            byte[] classfileBuffer
+        ) {
+            if (className == null) {
+                return null;
+            }
+            final byte[] result = instrumentClass(className, classfileBuffer);
+            if (pending.remove(className) && pending.isEmpty()) {
+                System.out.println("[ModLoadingScreen] All classes transformed. Removing the class transformer.");
+                remove();
+            }
+            return result;
+        }
+
+        /**
+         * Removes this transformer, if it hasn't already removed itself.
+         */
+        void remove() {
+            if (removed) return;
+            removed = true;
+            instrumentation.removeTransformer(this);
+        }
     }
 
-    private static void instrumentEntrypointUtilsInvoke(ClassNode clazz, boolean onQuilt) {
-        final MethodNode method = clazz.methods.stream()
-            .filter(m -> m.name.equals(onQuilt ? "invokeContainer" : "invoke"))
-            .findFirst()
-            .orElseThrow(IllegalStateException::new);
-        final ListIterator<AbstractInsnNode> it = method.instructions.iterator();
+    private static void maybeCloseAfter(MethodVisitor mv, int keyIndex) {
+        mv.visitVarInsn(Opcodes.ALOAD, keyIndex);
+        invokeHook(mv, "maybeCloseAfter", "(Ljava/lang/String;)V");
+    }
 
-        maybeCloseAfter(it, false);
+    /**
+     * Calls the {@link ActualLoadingScreen} hook with the given name through {@link #HOOK_BOOTSTRAP}, so it stops
+     * costing anything once the entrypoints are finished.
+     */
+    private static void invokeHook(MethodVisitor mv, String name, String descriptor) {
+        mv.visitInvokeDynamicInsn(name, descriptor, HOOK_BOOTSTRAP);
     }
 
     /**
-     * Inserts code for calling maybeCloseAfter, and leaves {@code it} pointing to the {@code RETURN}.
+     * Applies a method transformer to the first method with the given name, or to all of them. Bridge methods are
+     * skipped.
      */
-    private static void maybeCloseAfter(ListIterator<AbstractInsnNode> it, boolean instanceMethod) {
-        while (it.hasNext()) {
-            final AbstractInsnNode insn = it.next();
-            if (!(insn instanceof InsnNode)) continue;
-            if (insn.getOpcode() == Opcodes.RETURN) break;
+    private static final class MethodTransformer extends ClassVisitor {
+        private final String className;
+        private final String methodName;
+        private final String notFoundMessage;
+        private final boolean everyOverload;
+        private final UnaryOperator<MethodVisitor> methodTransformer;
+        private boolean supported = true;
+        private boolean found;
+
+        /**
+         * @param notFoundMessage What to log if there's no such method, or {@code null} to log an error
+         */
+        MethodTransformer(
+            ClassVisitor cv,
+            String className,
+            String methodName,
+            String notFoundMessage,
+            UnaryOperator<MethodVisitor> methodTransformer
+        ) {
+            this(cv, className, methodName, notFoundMessage, false, methodTransformer);
+        }
+
+        MethodTransformer(
+            ClassVisitor cv,
+            String className,
+            String methodName,
+            String notFoundMessage,
+            boolean everyOverload,
+            UnaryOperator<MethodVisitor> methodTransformer
+        ) {
+            super(ASM_API, cv);
+            this.className = className;
+            this.methodName = methodName;
+            this.notFoundMessage = notFoundMessage;
+            this.everyOverload = everyOverload;
+            this.methodTransformer = methodTransformer;
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            if ((version & 0xffff) < Opcodes.V1_7) {
+                // The hooks are invokedynamic
+                supported = false;
+                System.err.println("[ModLoadingScreen] [ERROR] " + className + " is too old to transform");
+            }
+            super.visit(version, access, name, signature, superName, interfaces);
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+            final MethodVisitor mv = super.visitMethod(access, name, descriptor, signature, exceptions);
+            if (
+                !supported ||
+                    found && !everyOverload ||
+                    (access & Opcodes.ACC_BRIDGE) != 0 ||
+                    !name.equals(methodName)
+            ) {
+                return mv;
+            }
+            found = true;
+            return methodTransformer.apply(mv);
+        }
+
+        @Override
+        public void visitEnd() {
+            if (supported && !found) {
+                if (notFoundMessage != null) {
+                    System.out.println("[ModLoadingScreen] " + notFoundMessage);
+                } else {
+                    System.err.println("[ModLoadingScreen] [ERROR] " + className + '.' + methodName + " not found");
+                }
+            }
+            super.visitEnd();
+        }
+    }
+
+    /**
+     * Calls maybeCloseAfter before the first {@code RETURN}.
+     */
+    private static final class MaybeCloseAfterHook extends MethodVisitor {
+        private boolean done;
+
+        MaybeCloseAfterHook(MethodVisitor mv) {
+            super(ASM_API, mv);
+        }
+
+        @Override
+        public void visitInsn(int opcode) {
+            if (opcode == Opcodes.RETURN && !done) {
+                done = true;
+                maybeCloseAfter(mv, 0);
+            }
+            super.visitInsn(opcode);
         }
-        it.previous();
-        it.add(new VarInsnNode(Opcodes.ALOAD, instanceMethod ? 1 : 0));
-        it.add(new MethodInsnNode(
-            Opcodes.INVOKESTATIC,
-            ACTUAL_LOADING_SCREEN, "maybeCloseAfter",
-            "(Ljava/lang/String;)V",
-            false
-        ));
     }
 
-    private static void instrumentEntrypointUtilsInvoke0(ClassNode clazz, boolean onQuilt) {
-        final MethodNode method = clazz.methods.stream()
-            .filter(m -> m.name.equals("invoke0"))
-            .findFirst()
-            .orElseThrow(IllegalStateException::new);
-        final ListIterator<AbstractInsnNode> it = method.instructions.iterator();
+    /**
+     * Calls one hook at the start of the method, and another before each return.
+     */
+    private static final class BoundaryHooks extends MethodVisitor {
+        private final String before;
+        private final String after;
+
+        BoundaryHooks(MethodVisitor mv, String before, String after) {
+            super(ASM_API, mv);
+            this.before = before;
+            this.after = after;
+        }
+
+        @Override
+        public void visitCode() {
+            super.visitCode();
+            invokeHook(mv, before, "()V");
+        }
 
-        mainEntrypointHooks(it, onQuilt, false);
+        @Override
+        public void visitInsn(int opcode) {
+            if (opcode >= Opcodes.IRETURN && opcode <= Opcodes.RETURN) {
+                invokeHook(mv, after, "()V");
+            }
+            super.visitInsn(opcode);
+        }
     }
 
-    private static void mainEntrypointHooks(ListIterator<AbstractInsnNode> it, boolean onQuilt, boolean instanceMethod) {
-        final int varOffset = instanceMethod ? 1 : 0;
-        //noinspection PointlessArithmeticExpression
-        final int keyIndex = 0 + varOffset;
-        final int typeIndex = 1 + varOffset;
-
-        it.add(new VarInsnNode(Opcodes.ALOAD, keyIndex));
-        it.add(new VarInsnNode(Opcodes.ALOAD, typeIndex));
-        it.add(new MethodInsnNode(
-            Opcodes.INVOKESTATIC,
-            ACTUAL_LOADING_SCREEN, "beforeEntrypointType",
-            "(Ljava/lang/String;Ljava/lang/Class;)V"
-        ));
+    /**
+     * Calls a hook after the constructor calls its superclass's constructor. Constructors that delegate to another
+     * constructor of the same class don't, so each object is only counted once.
+     */
+    private static final class AfterSuperConstructorHook extends MethodVisitor {
+        private final String superName;
+        private final String hook;
+        private boolean done;
+
+        AfterSuperConstructorHook(MethodVisitor mv, String superName, String hook) {
+            super(ASM_API, mv);
+            this.superName = superName;
+            this.hook = hook;
+        }
 
-        final int container = (onQuilt ? 7 : 6) + varOffset;
-        while (it.hasNext()) {
-            final AbstractInsnNode insn = it.next();
-            if (!(insn instanceof VarInsnNode)) continue;
-            if (insn.getOpcode() == Opcodes.ASTORE && ((VarInsnNode)insn).var == container) break;
+        @Override
+        public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+            super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+            if (done || opcode != Opcodes.INVOKESPECIAL || !owner.equals(superName) || !name.equals("<init>")) return;
+            done = true;
+            invokeHook(mv, hook, "()V");
         }
-        it.add(new VarInsnNode(Opcodes.ALOAD, keyIndex));
-        it.add(new VarInsnNode(Opcodes.ALOAD, typeIndex));
-        it.add(new MethodInsnNode(
-            Opcodes.INVOKEVIRTUAL,
-            "java/lang/Class", "getSimpleName",
-            "()Ljava/lang/String;"
-        ));
-        if (onQuilt) {
-            it.add(new TypeInsnNode(Opcodes.NEW, ENTRYPOINT_CONTAINER_IMPL));
-            it.add(new InsnNode(Opcodes.DUP));
+    }
+
+    /**
+     * Calls beforeModScan with the task at the start of {@code ModScanTask.compute}, and afterModScan with the
+     * candidate it found and the task before each {@code ARETURN}.
+     */
+    private static final class ModScanHooks extends MethodVisitor {
+        ModScanHooks(MethodVisitor mv) {
+            super(ASM_API, mv);
         }
-        it.add(new VarInsnNode(Opcodes.ALOAD, container));
-        if (onQuilt) {
-            it.add(new MethodInsnNode(
-                Opcodes.INVOKESPECIAL,
-                ENTRYPOINT_CONTAINER_IMPL, "<init>",
-                "(Lorg/quiltmc/loader/api/entrypoint/EntrypointContainer;)V"
-            ));
+
+        @Override
+        public void visitCode() {
+            super.visitCode();
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            invokeHook(mv, "beforeModScan", "(Ljava/lang/Object;)V");
         }
-        it.add(new MethodInsnNode(
-            Opcodes.INVOKEINTERFACE,
-            ENTRYPOINT_CONTAINER, "getProvider",
-            "()L" + MOD_CONTAINER + ";"
-        ));
-        it.add(new MethodInsnNode(
-            Opcodes.INVOKEINTERFACE,
-            MOD_CONTAINER, "getMetadata",
-            "()L" + MOD_METADATA + ";"
-        ));
-        it.add(new InsnNode(Opcodes.DUP));
-        it.add(new MethodInsnNode(
-            Opcodes.INVOKEINTERFACE,
-            MOD_METADATA, "getId",
-            "()Ljava/lang/String;"
-        ));
-        it.add(new InsnNode(Opcodes.SWAP));
-        it.add(new MethodInsnNode(
-            Opcodes.INVOKEINTERFACE,
-            MOD_METADATA, "getName",
-            "()Ljava/lang/String;"
-        ));
-        it.add(new MethodInsnNode(
-            Opcodes.INVOKESTATIC,
-            ACTUAL_LOADING_SCREEN, "beforeSingleEntrypoint",
-            "(Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;)V",
-            false
-        ));
 
-        while (it.hasNext()) {
-            final AbstractInsnNode insn = it.next();
-            if (!(insn instanceof InsnNode)) continue;
-            if (insn.getOpcode() == Opcodes.IFNULL) break;
+        @Override
+        public void visitInsn(int opcode) {
+            if (opcode == Opcodes.ARETURN) {
+                // ModCandidateImpl
+                mv.visitInsn(Opcodes.DUP);
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                // ModCandidateImpl ModCandidateImpl ModScanTask
+                invokeHook(mv, "afterModScan", "(Ljava/lang/Object;Ljava/lang/Object;)V");
+                // ModCandidateImpl
+            }
+            super.visitInsn(opcode);
         }
-        it.previous();
-        it.previous();
-        it.add(new VarInsnNode(Opcodes.ALOAD, keyIndex));
-        it.add(new MethodInsnNode(
-            Opcodes.INVOKESTATIC,
-            ACTUAL_LOADING_SCREEN, "afterEntrypointType",
-            "(Ljava/lang/String;)V"
-        ));
     }
 
-    private static void instrumentModDiscovererDiscoverMods(ClassNode clazz, boolean onQuilt) {
-        final MethodNode method = clazz.methods.stream()
-            .filter(m -> m.name.equals(onQuilt ? "resolve" : "discoverMods"))
-            .findFirst()
-            .orElseThrow(IllegalStateException::new);
-        final ListIterator<AbstractInsnNode> it = method.instructions.iterator();
+    /**
+     * Calls beforeEntrypointType with the list {@code getEntrypointContainers} returns, so the loader doesn't have to
+     * build it again to count it, beforeSingleEntrypoint once each container is stored in its local, and
+     * afterEntrypointType before the {@code RETURN} after the loop.
+     * <p>
+     * In {@code FabricLoaderImpl.invokeEntrypoints}, there's an early {@code RETURN} if there are no entrypoints, and
+     * maybeCloseAfter is called before both. The hooks then start after it.
+     */
+    private static final class EntrypointHooks extends MethodVisitor {
+        private static final int EARLY_RETURN = 0;
+        private static final int BEFORE_TYPE = 1;
+        private static final int CONTAINER = 2;
+        private static final int AFTER_TYPE = 3;
+        private static final int DONE = 4;
+
+        private final boolean onQuilt;
+        private final boolean instanceMethod;
+        private final int keyIndex;
+        private final int typeIndex;
+        private final int containerIndex;
+        private int stage;
+
+        EntrypointHooks(MethodVisitor mv, boolean onQuilt, boolean instanceMethod) {
+            super(ASM_API, mv);
+            this.onQuilt = onQuilt;
+            this.instanceMethod = instanceMethod;
+            final int varOffset = instanceMethod ? 1 : 0;
+            //noinspection PointlessArithmeticExpression
+            keyIndex = 0 + varOffset;
+            typeIndex = 1 + varOffset;
+            containerIndex = (onQuilt ? 7 : 6) + varOffset;
+            stage = instanceMethod ? EARLY_RETURN : BEFORE_TYPE;
+        }
 
-        final String BuiltinMod = onQuilt ? QUILT_BUILTIN_MOD : FABRIC_BUILTIN_MOD;
+        @Override
+        public void visitInsn(int opcode) {
+            if (opcode == Opcodes.RETURN) {
+                if (stage == EARLY_RETURN) {
+                    maybeCloseAfter(mv, keyIndex);
+                    stage = BEFORE_TYPE;
+                } else if (stage == AFTER_TYPE) {
+                    mv.visitVarInsn(Opcodes.ALOAD, keyIndex);
+                    invokeHook(mv, "afterEntrypointType", "(Ljava/lang/String;)V");
+                    if (instanceMethod) {
+                        maybeCloseAfter(mv, keyIndex);
+                    }
+                    stage = DONE;
+                }
+            }
+            super.visitInsn(opcode);
+        }
 
-        while (it.hasNext()) {
-            final AbstractInsnNode insn = it.next();
-            if (!(insn instanceof TypeInsnNode)) continue;
-            if (insn.getOpcode() == Opcodes.CHECKCAST && ((TypeInsnNode)insn).desc.equals(BuiltinMod)) break;
+        @Override
+        public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+            super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+            if (
+                stage == BEFORE_TYPE &&
+                    name.equals("getEntrypointContainers") &&
+                    (descriptor.endsWith(")Ljava/util/List;") || descriptor.endsWith(")Ljava/util/Collection;"))
+            ) {
+                beforeEntrypointType();
+            }
         }
 
-        // BuiltinMod
-        it.add(new InsnNode(Opcodes.DUP));
-        // BuiltinMod BuiltinMod
-        it.add(new FieldInsnNode(Opcodes.GETFIELD, BuiltinMod, "metadata", "L" + MOD_METADATA + ";"));
-        // BuiltinMod ModMetadata
-        it.add(new InsnNode(Opcodes.DUP));
-        // BuiltinMod ModMetadata ModMetadata
-        it.add(new MethodInsnNode(Opcodes.INVOKEINTERFACE, MOD_METADATA, "getId", "()Ljava/lang/String;"));
-        // BuiltinMod ModMetadata String
-        it.add(new InsnNode(Opcodes.SWAP));
-        // BuiltinMod String ModMetadata
-        it.add(new InsnNode(Opcodes.DUP));
-        // BuiltinMod String ModMetadata ModMetadata
-        it.add(new MethodInsnNode(Opcodes.INVOKEINTERFACE, MOD_METADATA, "getName", "()Ljava/lang/String;"));
-        // BuiltinMod String ModMetadata String
-        it.add(new InsnNode(Opcodes.SWAP));
-        // BuiltinMod String String ModMetadata
-        it.add(new MethodInsnNode(Opcodes.INVOKEINTERFACE, MOD_METADATA, "getVersion", "()L" + FABRIC_VERSION + ";"));
-        // BuiltinMod String String Version
-        it.add(new MethodInsnNode(Opcodes.INVOKEINTERFACE, FABRIC_VERSION, "getFriendlyString", "()Ljava/lang/String;"));
-        // BuiltinMod String String String
-        it.add(new MethodInsnNode(
-            Opcodes.INVOKESTATIC, ACTUAL_LOADING_SCREEN, "setTitleFromMetadata",
-            "(Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;)V"
-        ));
-        // BuiltinMod
+        @Override
+        public void visitVarInsn(int opcode, int varIndex) {
+            super.visitVarInsn(opcode, varIndex);
+            if (opcode == Opcodes.ASTORE && varIndex == containerIndex && stage == CONTAINER) {
+                beforeSingleEntrypoint();
+                stage = AFTER_TYPE;
+            }
+        }
+
+        @Override
+        public void visitEnd() {
+            if (stage != DONE) {
+                System.err.println("[ModLoadingScreen] [ERROR] Entrypoint hooks only partially inserted (stage " + stage + ')');
+            }
+            super.visitEnd();
+        }
+
+        private void beforeEntrypointType() {
+            // Collection
+            mv.visitInsn(Opcodes.DUP);
+            // Collection Collection
+            mv.visitVarInsn(Opcodes.ALOAD, keyIndex);
+            mv.visitVarInsn(Opcodes.ALOAD, typeIndex);
+            // Collection Collection String Class
+            invokeHook(mv, "beforeEntrypointType", "(Ljava/util/Collection;Ljava/lang/String;Ljava/lang/Class;)V");
+            // Collection
+            stage = CONTAINER;
+        }
+
+        private void beforeSingleEntrypoint() {
+            mv.visitVarInsn(Opcodes.ALOAD, keyIndex);
+            mv.visitVarInsn(Opcodes.ALOAD, typeIndex);
+            mv.visitMethodInsn(
+                Opcodes.INVOKEVIRTUAL,
+                "java/lang/Class", "getSimpleName",
+                "()Ljava/lang/String;",
+                false
+            );
+            if (onQuilt) {
+                mv.visitTypeInsn(Opcodes.NEW, ENTRYPOINT_CONTAINER_IMPL);
+                mv.visitInsn(Opcodes.DUP);
+            }
+            mv.visitVarInsn(Opcodes.ALOAD, containerIndex);
+            if (onQuilt) {
+                mv.visitMethodInsn(
+                    Opcodes.INVOKESPECIAL,
+                    ENTRYPOINT_CONTAINER_IMPL, "<init>",
+                    "(Lorg/quiltmc/loader/api/entrypoint/EntrypointContainer;)V",
+                    false
+                );
+            }
+            mv.visitMethodInsn(
+                Opcodes.INVOKEINTERFACE,
+                ENTRYPOINT_CONTAINER, "getProvider",
+                "()L" + MOD_CONTAINER + ";",
+                true
+            );
+            mv.visitMethodInsn(
+                Opcodes.INVOKEINTERFACE,
+                MOD_CONTAINER, "getMetadata",
+                "()L" + MOD_METADATA + ";",
+                true
+            );
+            mv.visitInsn(Opcodes.DUP);
+            mv.visitMethodInsn(
+                Opcodes.INVOKEINTERFACE,
+                MOD_METADATA, "getId",
+                "()Ljava/lang/String;",
+                true
+            );
+            mv.visitInsn(Opcodes.SWAP);
+            mv.visitMethodInsn(
+                Opcodes.INVOKEINTERFACE,
+                MOD_METADATA, "getName",
+                "()Ljava/lang/String;",
+                true
+            );
+            invokeHook(mv, "beforeSingleEntrypoint", "(Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;)V");
+        }
     }
 
-    private static void instrumentStandardQuiltPluginAddBuiltinMods(ClassNode clazz) {
-        final MethodNode method = clazz.methods.stream()
-            .filter(m -> m.name.equals("addBuiltinMods"))
-            .findFirst()
-            .orElseThrow(IllegalStateException::new);
-        final ListIterator<AbstractInsnNode> it = method.instructions.iterator();
-
-        while (it.hasNext()) {
-            final AbstractInsnNode insn = it.next();
-            if (!(insn instanceof TypeInsnNode)) continue;
-            if (insn.getOpcode() == Opcodes.CHECKCAST && ((TypeInsnNode)insn).desc.equals(QUILT_BUILTIN_MOD)) break;
+    /**
+     * Calls setTitleFromMetadata with the first builtin mod's metadata, right after it's cast to {@code BuiltinMod}.
+     */
+    private static final class BuiltinModTitleHook extends MethodVisitor {
+        private final String builtinMod;
+        private final String metadata;
+        private final String getId;
+        private final String getName;
+        private final String getVersion;
+        private final String version;
+        private final String versionToString;
+        private boolean done;
+
+        BuiltinModTitleHook(
+            MethodVisitor mv,
+            String builtinMod,
+            String metadata,
+            String getId,
+            String getName,
+            String getVersion,
+            String version,
+            String versionToString
+        ) {
+            super(ASM_API, mv);
+            this.builtinMod = builtinMod;
+            this.metadata = metadata;
+            this.getId = getId;
+            this.getName = getName;
+            this.getVersion = getVersion;
+            this.version = version;
+            this.versionToString = versionToString;
         }
 
-        // BuiltinMod
-        it.add(new InsnNode(Opcodes.DUP));
-        // BuiltinMod BuiltinMod
-        it.add(new FieldInsnNode(Opcodes.GETFIELD, QUILT_BUILTIN_MOD, "metadata", "L" + INTERNAL_MOD_METADATA + ";"));
-        // BuiltinMod InternalModMetadata
-        it.add(new InsnNode(Opcodes.DUP));
-        // BuiltinMod InternalModMetadata InternalModMetadata
-        it.add(new MethodInsnNode(Opcodes.INVOKEINTERFACE, INTERNAL_MOD_METADATA, "id", "()Ljava/lang/String;"));
-        // BuiltinMod InternalModMetadata String
-        it.add(new InsnNode(Opcodes.SWAP));
-        // BuiltinMod String InternalModMetadata
-        it.add(new InsnNode(Opcodes.DUP));
-        // BuiltinMod String InternalModMetadata InternalModMetadata
-        it.add(new MethodInsnNode(Opcodes.INVOKEINTERFACE, INTERNAL_MOD_METADATA, "name", "()Ljava/lang/String;"));
-        // BuiltinMod String InternalModMetadata String
-        it.add(new InsnNode(Opcodes.SWAP));
-        // BuiltinMod String String InternalModMetadata
-        it.add(new MethodInsnNode(Opcodes.INVOKEINTERFACE, INTERNAL_MOD_METADATA, "version", "()L" + QUILT_VERSION + ";"));
-        // BuiltinMod String String Version
-        it.add(new MethodInsnNode(Opcodes.INVOKEINTERFACE, QUILT_VERSION, "raw", "()Ljava/lang/String;"));
-        // BuiltinMod String String String
-        it.add(new MethodInsnNode(
-            Opcodes.INVOKESTATIC, ACTUAL_LOADING_SCREEN, "setTitleFromMetadata",
-            "(Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;)V"
-        ));
-        // BuiltinMod
+        @Override
+        public void visitTypeInsn(int opcode, String type) {
+            super.visitTypeInsn(opcode, type);
+            if (done || opcode != Opcodes.CHECKCAST || !type.equals(builtinMod)) return;
+            done = true;
+
+            // BuiltinMod
+            mv.visitInsn(Opcodes.DUP);
+            // BuiltinMod BuiltinMod
+            mv.visitFieldInsn(Opcodes.GETFIELD, builtinMod, "metadata", "L" + metadata + ";");
+            // BuiltinMod ModMetadata
+            mv.visitInsn(Opcodes.DUP);
+            // BuiltinMod ModMetadata ModMetadata
+            mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, metadata, getId, "()Ljava/lang/String;", true);
+            // BuiltinMod ModMetadata String
+            mv.visitInsn(Opcodes.SWAP);
+            // BuiltinMod String ModMetadata
+            mv.visitInsn(Opcodes.DUP);
+            // BuiltinMod String ModMetadata ModMetadata
+            mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, metadata, getName, "()Ljava/lang/String;", true);
+            // BuiltinMod String ModMetadata String
+            mv.visitInsn(Opcodes.SWAP);
+            // BuiltinMod String String ModMetadata
+            mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, metadata, getVersion, "()L" + version + ";", true);
+            // BuiltinMod String String Version
+            mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, version, versionToString, "()Ljava/lang/String;", true);
+            // BuiltinMod String String String
+            invokeHook(mv, "setTitleFromMetadata", "(Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;)V");
+            // BuiltinMod
+        }
     }
 }
@@ -0,0 +1,89 @@
+package io.github.gaming32.modloadingscreen;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * What the loading screen window should show. The hooks update it from whatever thread they're called on, and only
+ * mark it dirty. The window applies it on the EDT at most once per {@link #FRAME_INTERVAL_MILLIS}, so a burst of
+ * updates costs one repaint, and a burst of new bars one layout pass.
+ */
+final class MlsUiModel {
+    static final int FRAME_INTERVAL_MILLIS = 16;
+
+    private final AtomicBoolean dirty = new AtomicBoolean(true);
+    private final List<Bar> bars = new CopyOnWriteArrayList<>();
+    private final Map<String, Bar> barsById = new ConcurrentHashMap<>();
+    private final AtomicInteger structureVersion = new AtomicInteger();
+
+    volatile String title = "";
+    volatile long memoryUsage;
+    volatile long memoryTotal;
+    volatile String metricsText = "";
+
+    Bar addBar(String id) {
+        final Bar bar = new Bar(id);
+        final Bar old = barsById.put(id, bar);
+        if (old != null) {
+            bars.remove(old);
+        }
+        bars.add(bar);
+        structureVersion.incrementAndGet();
+        markDirty();
+        return bar;
+    }
+
+    Bar getBar(String id) {
+        return barsById.get(id);
+    }
+
+    void removeBar(String id) {
+        final Bar bar = barsById.remove(id);
+        if (bar == null) return;
+        bars.remove(bar);
+        structureVersion.incrementAndGet();
+        markDirty();
+    }
+
+    /**
+     * The bars in the order they were added. The returned list is a snapshot and is safe to iterate on any thread.
+     */
+    List<Bar> getBars() {
+        return bars;
+    }
+
+    /**
+     * Changes whenever a bar is added or removed.
+     */
+    int getStructureVersion() {
+        return structureVersion.get();
+    }
+
+    void markDirty() {
+        dirty.set(true);
+    }
+
+    /**
+     * Returns whether anything changed since the last call, and resets the flag.
+     */
+    boolean takeDirty() {
+        return dirty.getAndSet(false);
+    }
+
+    static final class Bar {
+        final String id;
+        volatile String text = "";
+        volatile int value;
+        volatile int minimum;
+        volatile int maximum;
+        volatile boolean indeterminate;
+
+        private Bar(String id) {
+            this.id = id;
+        }
+    }
+}
@@ -10,10 +10,12 @@ import net.lenni0451.reflect.Agents;
 import net.lenni0451.reflect.ClassLoaders;
 import net.lenni0451.reflect.Methods;
 
+import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.Instrumentation;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 import static io.github.gaming32.modloadingscreen.MlsTransformers.ACTUAL_LOADING_SCREEN;
 
@@ -63,17 +65,31 @@ public class ModLoadingScreen implements LanguageAdapter {
                 .orElseThrow(AssertionError::new)
         );
 
-        Methods.invoke(null, Methods.getDeclaredMethod(
-            ClassLoaders.defineClass(ClassLoader.getSystemClassLoader(), ACTUAL_LOADING_SCREEN.replace('/', '.'), alsData),
-            "startLoadingScreen", boolean.class
-        ), true);
+        final Class<?> actualLoadingScreen = ClassLoaders.defineClass(
+            ClassLoader.getSystemClassLoader(), ACTUAL_LOADING_SCREEN.replace('/', '.'), alsData
+        );
+        Methods.invoke(null, Methods.getDeclaredMethod(actualLoadingScreen, "startLoadingScreen", boolean.class), true);
+        final LongAdder classLoadCounter = (LongAdder)actualLoadingScreen.getField("CLASS_LOAD_COUNTER").get(null);
 
+        MlsTransformers.enableCache(FabricLoader.getInstance().getGameDir().resolve(".cache/mod-loading-screen"));
         final Instrumentation instrumentation = Agents.getInstrumentation();
-        instrumentation.addTransformer(
-            (loader, className, classBeingRedefined, protectionDomain, classfileBuffer) ->
-                MlsTransformers.instrumentClass(className, classfileBuffer),
-            true
+        final ClassFileTransformer classLoadCounterTransformer =
+            (loader, className, classBeingRedefined, protectionDomain, classfileBuffer) -> {
+                classLoadCounter.increment();
+                return null;
+            };
+        instrumentation.addTransformer(classLoadCounterTransformer, false);
+        final MlsTransformers.PatchingTransformer transformer = MlsTransformers.install(
+            instrumentation, RUNNING_ON_QUILT, true
+        );
+        final Runnable closeListener = () -> {
+            instrumentation.removeTransformer(classLoadCounterTransformer);
+            transformer.remove();
+        };
+        Methods.invoke(
+            null, Methods.getDeclaredMethod(actualLoadingScreen, "addCloseListener", Runnable.class), closeListener
         );
+
         final List<Class<?>> toRetransform = new ArrayList<>(1);
         for (final Class<?> loaded : instrumentation.getAllLoadedClasses()) {
             if (MlsTransformers.TRANSFORMERS.containsKey(loaded.getName().replace('.', '/'))) {